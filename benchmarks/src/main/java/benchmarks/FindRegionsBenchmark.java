@@ -0,0 +1,38 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * findRegions with every engine, on each SyntheticFrames scene at three sizes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class FindRegionsBenchmark {
+	@Param({ "FLOOD_FILL", "LABELING", "PARALLEL_LABELING" })
+	public String engine;
+
+	@Param({ "UNIFORM", "NOISY", "SMALL_BLOBS", "HUGE_BLOB" })
+	public String scene;
+
+	@Param({ "320x240", "640x480", "1280x720" })
+	public String size;
+
+	private Supplier<Object> findRegions;
+
+	@Setup
+	public void setUp() {
+		findRegions = Operations.get("findRegions " + engine, scene, size);
+	}
+
+	@Benchmark
+	public Object findRegions() {
+		return findRegions.get();
+	}
+}
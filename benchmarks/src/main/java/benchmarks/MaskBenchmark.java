@@ -0,0 +1,39 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Building the RGB box match mask one pixel at a time, and with the Vector API, on each SyntheticFrames scene
+ * at three sizes. The fork adds jdk.incubator.vector, without which there's no vector builder to time.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class MaskBenchmark {
+	@Param({ "scalar", "vector" })
+	public String builder;
+
+	@Param({ "UNIFORM", "NOISY", "SMALL_BLOBS", "HUGE_BLOB" })
+	public String scene;
+
+	@Param({ "320x240", "640x480", "1280x720" })
+	public String size;
+
+	private Supplier<Object> mask;
+
+	@Setup
+	public void setUp() {
+		mask = Operations.get("mask " + builder, scene, size);
+	}
+
+	@Benchmark
+	public Object buildMask() {
+		return mask.get();
+	}
+}
@@ -0,0 +1,34 @@
+package benchmarks;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.function.Supplier;
+
+/**
+ * Gets the operations to time from RegionsBenchmark.operation(). The tracking code is all in the default package,
+ * which can't be imported from here, and JMH won't take benchmarks that aren't in a package, so this goes
+ * by reflection, once per trial; the operation itself is then a plain interface call.
+ */
+final class Operations {
+	private Operations() {
+	}
+
+	/**
+	 * The named operation on a synthetic frame of the given scene and size ("WIDTHxHEIGHT").
+	 */
+	@SuppressWarnings("unchecked")
+	static Supplier<Object> get(String name, String scene, String size) {
+		String[] dimensions = size.split("x");
+		try {
+			return (Supplier<Object>) Class.forName("RegionsBenchmark")
+					.getMethod("operation", String.class, String.class, int.class, int.class)
+					.invoke(null, name, scene, Integer.parseInt(dimensions[0]), Integer.parseInt(dimensions[1]));
+		}
+		catch (InvocationTargetException e) {
+			if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+			throw new IllegalStateException(e.getCause());
+		}
+		catch (ReflectiveOperationException e) {
+			throw new IllegalStateException("can't get benchmark `" + name + "' from RegionsBenchmark", e);
+		}
+	}
+}
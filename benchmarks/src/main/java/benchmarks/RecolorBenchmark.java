@@ -0,0 +1,47 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * largestRegion and recolorImage ('r' and 'p'), on the regions found in each SyntheticFrames scene at three sizes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class RecolorBenchmark {
+	@Param({ "UNIFORM", "NOISY", "SMALL_BLOBS", "HUGE_BLOB" })
+	public String scene;
+
+	@Param({ "320x240", "640x480", "1280x720" })
+	public String size;
+
+	private Supplier<Object> largestRegion, recolorR, recolorP;
+
+	@Setup
+	public void setUp() {
+		largestRegion = Operations.get("largestRegion", scene, size);
+		recolorR = Operations.get("recolorImage r", scene, size);
+		recolorP = Operations.get("recolorImage p", scene, size);
+	}
+
+	@Benchmark
+	public Object largestRegion() {
+		return largestRegion.get();
+	}
+
+	@Benchmark
+	public Object recolorImageR() {
+		return recolorR.get();
+	}
+
+	@Benchmark
+	public Object recolorImageP() {
+		return recolorP.get();
+	}
+}
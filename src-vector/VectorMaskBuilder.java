@@ -0,0 +1,50 @@
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * MaskBuilder on the incubating Vector API: unpacks a vector's worth of pixels' channels at once, tests all three
+ * against the target, and gathers the lanes' answers into mask bits.
+ * Compile and run with --add-modules jdk.incubator.vector (and src on the classpath); found by MaskBuilder.vector().
+ */
+public class VectorMaskBuilder implements MaskBuilder {
+	private static final VectorSpecies<Integer> species = IntVector.SPECIES_PREFERRED;
+	// lane i holds 1 << i, so OR-ing the matching lanes' weights gives their bits (VectorMask.toLong allocates on JDK 17)
+	private static final IntVector weights = IntVector.broadcast(species, 1).lanewise(VectorOperators.LSHL, IntVector.zero(species).addIndex(1));
+
+	public VectorMaskBuilder() {
+		// lanes' bits are put together in an int, then within a 64-bit word, so the lane count has to divide 32
+		if (32 % species.length() != 0) throw new UnsupportedOperationException(species.length() + " lanes");
+	}
+
+	public void build(int[] rgb, int from, int to, int red, int green, int blue, int tolerance, long[] mask) {
+		int lanes = species.length();
+		for (int word = from >> 6; (word << 6) < to; word++) {
+			int start = word << 6, end = Math.min(to, start + 64);
+			long bits = 0;
+			int p = start;
+			for (; p + lanes <= end; p += lanes) {
+				IntVector c = IntVector.fromArray(species, rgb, p);
+				IntVector dr = c.lanewise(VectorOperators.LSHR, 16).and(0xff).sub(red).abs();
+				IntVector dg = c.lanewise(VectorOperators.LSHR, 8).and(0xff).sub(green).abs();
+				IntVector db = c.and(0xff).sub(blue).abs();
+				VectorMask<Integer> m = dr.max(dg).max(db).lt(tolerance);		// all three channels within tolerance
+				bits |= (IntVector.zero(species).blend(weights, m).reduceLanes(VectorOperators.OR) & 0xffffffffL) << (p - start);
+			}
+			for (; p < end; p++) {		// the end of the image, when it isn't a whole vector
+				int c = rgb[p];
+				if (Math.abs(((c >> 16) & 0xff) - red) < tolerance
+						&& Math.abs(((c >> 8) & 0xff) - green) < tolerance
+						&& Math.abs((c & 0xff) - blue) < tolerance) {
+					bits |= 1L << (p - start);
+				}
+			}
+			mask[word] = bits;
+		}
+	}
+
+	public String toString() {
+		return "vector " + species.length() + " lanes";
+	}
+}
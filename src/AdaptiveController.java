@@ -0,0 +1,113 @@
+import java.util.Locale;
+
+/**
+ * Keeps frame processing within budget by trading away detail, watching how long each processed frame takes.
+ * Over budget, it first has RegionFinder look more coarsely (a bigger detection step), and only when that's
+ * as coarse as allowed does it track just every few frames; with time to spare, it goes back the other way,
+ * every frame first, then finer. There are two budgets: latency, for how long one frame may take, and the frame
+ * period, for how much processing time each frame may take on average, skipped frames included.
+ * Each change waits a few frames for its effect to show before the next, and going back needs a clear margin,
+ * so it doesn't flap.
+ */
+public class AdaptiveController {
+	private static final double smoothing = 0.2;		// weight of each new time in the average
+	private static final double headroom = 0.8;			// only go back if the result should be within this much of budget
+	private static final int settleFrames = 8;			// processed frames to wait after a change
+
+	private final int maxStep, maxInterval;				// the coarsest detection step, and fewest frames tracked
+	private volatile long latencyBudget;				// nanoseconds one frame may take to process
+	private volatile long framePeriod;					// nanoseconds of processing per frame on average
+	private double average;								// smoothed processing time per processed frame, nanoseconds
+	private volatile int step = 1;						// the detection step to use
+	private volatile int interval = 1;					// track every interval-th frame
+	private long frame;									// frames seen
+	private int settle;									// processed frames to wait before changing again
+
+	/**
+	 * A controller aiming for the frame rate, with each frame processed within the latency budget (milliseconds),
+	 * going no coarser than maxStep and tracking no less than every maxInterval-th frame.
+	 */
+	public AdaptiveController(double frameRate, double latencyBudgetMillis, int maxStep, int maxInterval) {
+		this.maxStep = maxStep;
+		this.maxInterval = maxInterval;
+		setFrameRate(frameRate);
+		setLatencyBudget(latencyBudgetMillis);
+	}
+
+	public AdaptiveController(double frameRate, double latencyBudgetMillis) {
+		this(frameRate, latencyBudgetMillis, 4, 4);
+	}
+
+	public void setFrameRate(double frameRate) {
+		framePeriod = (long) (1e9 / frameRate);
+	}
+
+	public void setLatencyBudget(double millis) {
+		latencyBudget = (long) (millis * 1e6);
+	}
+
+	/**
+	 * Called once per frame: whether to track in this one (if not, the last frame's regions stand).
+	 */
+	public boolean nextFrame() {
+		return frame++ % interval == 0;
+	}
+
+	/**
+	 * Records how long a tracked frame took to process, and adjusts the step and interval if need be.
+	 */
+	public void processed(long nanos) {
+		average = average == 0 ? nanos : average + smoothing * (nanos - average);
+		if (settle > 0) {
+			settle--;
+			return;
+		}
+		if (average > latencyBudget || average / interval > framePeriod) {
+			if (step < maxStep) changed(step + 1, interval, (double) step * step / ((step + 1) * (step + 1)));
+			else if (average / interval > framePeriod && interval < maxInterval) changed(step, interval + 1, 1);
+		}
+		else if (interval > 1) {
+			if (average / (interval - 1) < headroom * framePeriod) changed(step, interval - 1, 1);
+		}
+		else if (step > 1) {
+			double slower = (double) step * step / ((step - 1) * (step - 1));	// about how much more work a finer step is
+			if (average * slower < headroom * Math.min(latencyBudget, framePeriod)) changed(step - 1, interval, slower);
+		}
+	}
+
+	/**
+	 * Switches to the new step and interval, guessing the average from how much the work changes.
+	 */
+	private void changed(int step, int interval, double work) {
+		this.step = step;
+		this.interval = interval;
+		average *= work;
+		settle = settleFrames;
+	}
+
+	/**
+	 * The detection step to give RegionFinder.
+	 */
+	public int getStep() {
+		return step;
+	}
+
+	/**
+	 * Tracking every this many frames.
+	 */
+	public int getInterval() {
+		return interval;
+	}
+
+	/**
+	 * Smoothed processing time per tracked frame, in milliseconds.
+	 */
+	public double getAverageMillis() {
+		return average / 1e6;
+	}
+
+	public String toString() {
+		return String.format(Locale.ROOT, "adaptive: step %d, tracking every %d frame%s, %.2f ms/frame", step, interval,
+				interval == 1 ? "" : "s", average / 1e6);
+	}
+}
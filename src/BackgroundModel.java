@@ -0,0 +1,126 @@
+import java.util.Arrays;
+
+/**
+ * A running average of what the camera sees, to tell the moving foreground from the static background.
+ * Each frame, a pixel is foreground if its color is far enough from the average there (the sum of the channel
+ * differences is over the threshold); then the average moves a little towards the frame, much more slowly where
+ * it's foreground, so something that stops moving only fades into the background after a while.
+ * The average is kept per channel in fixed point, 4 fractional bits in a short, so the model takes 6 bytes per pixel
+ * plus a bit for the foreground mask, and updating it is one pass over the frame with no allocation.
+ * The first frame (or one of a different size) is taken as the background, with nothing in the foreground.
+ */
+public class BackgroundModel {
+	public static final int defaultThreshold = 45;		// summed channel difference that makes a pixel foreground
+	public static final int defaultLearningShift = 5;	// the background moves 1/32 of the way each frame
+
+	private final int threshold;
+	private final int learningShift, foregroundShift;	// how far (as a power of 2) the average moves, background and foreground
+	private int width, height;
+	private short[] red = new short[0], green = new short[0], blue = new short[0];	// the average, times 16
+	private long[] foreground = new long[0];		// bit per pixel, as packed points y*width + x
+	private int foregroundCount;					// bits set in foreground
+	private boolean started;						// whether the average has a frame in it yet
+
+	/**
+	 * A model where pixels are foreground if their channel differences from the average add up to more than threshold,
+	 * and the average moves 1/2^learningShift of the way to each frame (1/16 of that where it's foreground).
+	 */
+	public BackgroundModel(int threshold, int learningShift) {
+		if (learningShift < 1 || learningShift > 10) throw new IllegalArgumentException("learning shift must be 1 to 10");
+		this.threshold = threshold;
+		this.learningShift = learningShift;
+		this.foregroundShift = learningShift + 4;
+	}
+
+	public BackgroundModel() {
+		this(defaultThreshold, defaultLearningShift);
+	}
+
+	/**
+	 * Forgets the background; the next frame starts it over.
+	 */
+	public void reset() {
+		started = false;
+	}
+
+	/**
+	 * Finds the foreground in a frame of packed RGB pixels, one row after another, and moves the average
+	 * towards it. Returns the foreground mask, which the next update reuses.
+	 */
+	public long[] update(int[] rgb, int width, int height) {
+		int n = width * height, words = (n + 63) >> 6;
+		if (!started || width != this.width || height != this.height) {
+			start(rgb, width, height);
+			return foreground;
+		}
+		int count = 0;
+		int half = 1 << (learningShift - 1), foregroundHalf = 1 << (foregroundShift - 1);
+		for (int word = 0; word < words; word++) {
+			long bits = 0;
+			for (int p = word << 6, end = Math.min(n, p + 64), bit = 0; p < end; p++, bit++) {
+				int c = rgb[p], r = (c >> 12) & 0xff0, g = (c >> 4) & 0xff0, b = (c << 4) & 0xff0;
+				int br = red[p], bg = green[p], bb = blue[p];
+				int diff = Math.abs(r - br) + Math.abs(g - bg) + Math.abs(b - bb);
+				int shift = learningShift, round = half;
+				if (diff > threshold << 4) {
+					bits |= 1L << bit;
+					shift = foregroundShift;
+					round = foregroundHalf;
+				}
+				red[p] = (short) (br + ((r - br + round) >> shift));
+				green[p] = (short) (bg + ((g - bg + round) >> shift));
+				blue[p] = (short) (bb + ((b - bb + round) >> shift));
+			}
+			foreground[word] = bits;
+			count += Long.bitCount(bits);
+		}
+		foregroundCount = count;
+		return foreground;
+	}
+
+	/**
+	 * Takes a frame as the whole background.
+	 */
+	private void start(int[] rgb, int width, int height) {
+		int n = width * height, words = (n + 63) >> 6;
+		if (red.length < n) {
+			red = new short[n];
+			green = new short[n];
+			blue = new short[n];
+		}
+		if (foreground.length < words) foreground = new long[words];
+		for (int p = 0; p < n; p++) {
+			int c = rgb[p];
+			red[p] = (short) ((c >> 12) & 0xff0);
+			green[p] = (short) ((c >> 4) & 0xff0);
+			blue[p] = (short) ((c << 4) & 0xff0);
+		}
+		Arrays.fill(foreground, 0, words, 0L);
+		foregroundCount = 0;
+		this.width = width;
+		this.height = height;
+		started = true;
+	}
+
+	/**
+	 * The last update's foreground mask.
+	 */
+	public long[] getForeground() {
+		return foreground;
+	}
+
+	/**
+	 * The fraction of the last frame that was foreground.
+	 */
+	public double getForegroundFraction() {
+		return width * height == 0 ? 0 : (double) foregroundCount / (width * height);
+	}
+
+	/**
+	 * The average background color at (x,y).
+	 */
+	public int getBackgroundRGB(int x, int y) {
+		int p = y * width + x;
+		return ((red[p] + 8) >> 4) << 16 | ((green[p] + 8) >> 4) << 8 | ((blue[p] + 8) >> 4);
+	}
+}
@@ -0,0 +1,300 @@
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.FileSystems;
+import java.nio.file.PathMatcher;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Finds and recolors regions in a batch of image files with no window, using every core.
+ * Decoding, processing and encoding each have their own threads, so reading and writing files overlaps
+ * the region finding, and only a bounded number of images are in memory at once.
+ * Each recolored image is saved as a png in the output directory, and summary.csv there gets a line per image:
+ * the file, then for each target color the number of regions and the largest one's size and centroid.
+ * Usage: java BatchRecolor [--threads n] images targetColors outputDirectory
+ * where images is a directory or a glob (e.g. 'shots/*.jpg'), and targetColors are hex RRGGBB, separated by commas.
+ * A file that can't be read or written is reported and skipped; the exit status is 1 if any were.
+ * Two images whose names differ only in their extension (shot.jpg and shot.png) would be written to the same png,
+ * so such a batch is refused before anything is read.
+ */
+public class BatchRecolor {
+	private final List<ColorTarget> targets;
+	private final File output;
+	private final ExecutorService decoders, processors, encoders;
+	private final int permits;							// most images in memory at once
+	private final Semaphore inFlight;					// permits for images read but not yet written
+	private final ThreadLocal<RegionFinder> finders = new ThreadLocal<RegionFinder>() {
+		protected RegionFinder initialValue() {
+			return new RegionFinder();
+		}
+	};
+	private final AtomicInteger done = new AtomicInteger(), failed = new AtomicInteger();
+	private String[] summaries;							// each file's line of the summary, in file order
+
+	public BatchRecolor(List<ColorTarget> targets, File output, int threads) {
+		this.targets = targets;
+		this.output = output;
+		int io = Math.max(1, Math.min(4, threads / 2));
+		decoders = Executors.newFixedThreadPool(io);
+		processors = Executors.newFixedThreadPool(threads);
+		encoders = Executors.newFixedThreadPool(io);
+		permits = 2 * threads + 2 * io;
+		inFlight = new Semaphore(permits);
+	}
+
+	/**
+	 * Processes the files, returning once they've all been written (or failed).
+	 */
+	public void run(File[] files) throws InterruptedException, IOException {
+		Map<String, File> written = new HashMap<String, File>();	// by lower case, for case-insensitive file systems
+		for (File file : files) {
+			File other = written.put(outputName(file).toLowerCase(Locale.ROOT), file);
+			if (other != null) {
+				throw new IOException("`" + other + "' and `" + file + "' would both be written to " + outputName(file));
+			}
+		}
+		summaries = new String[files.length];
+		for (int i = 0; i < files.length; i++) {
+			inFlight.acquire();			// holds reading back when processing or writing falls behind
+			decoders.execute(new Decode(i, files[i]));
+		}
+		inFlight.acquire(permits);		// every image has been written or given up on
+		decoders.shutdown();
+		processors.shutdown();
+		encoders.shutdown();
+		if (!decoders.awaitTermination(1, TimeUnit.MINUTES) || !processors.awaitTermination(1, TimeUnit.MINUTES)
+				|| !encoders.awaitTermination(1, TimeUnit.MINUTES)) {
+			throw new IOException("worker threads didn't finish");
+		}
+		PrintWriter summary = new PrintWriter(new File(output, "summary.csv"), "UTF-8");
+		try {
+			StringBuilder header = new StringBuilder("file");
+			for (int t = 0; t < targets.size(); t++) header.append(",regions,largest,centroidX,centroidY");
+			summary.println(header);
+			for (String line : summaries) {
+				if (line != null) summary.println(line);
+			}
+		}
+		finally {
+			summary.close();
+		}
+	}
+
+	/**
+	 * The name of the png an image is written to.
+	 */
+	static String outputName(File file) {
+		String name = file.getName();
+		if (name.lastIndexOf('.') > 0) name = name.substring(0, name.lastIndexOf('.'));
+		return name + ".png";
+	}
+
+	/**
+	 * Gives up on a file: called exactly once for each file that isn't written, from a finally block, so that
+	 * even an Error (like running out of memory decoding a huge image) gives its permit back.
+	 */
+	private void failed(int index) {
+		summaries[index] = null;
+		failed.incrementAndGet();
+		inFlight.release();
+	}
+
+	/**
+	 * Reads a file, then hands it on for processing.
+	 */
+	private class Decode implements Runnable {
+		private final int index;
+		private final File file;
+
+		Decode(int index, File file) {
+			this.index = index;
+			this.file = file;
+		}
+
+		public void run() {
+			boolean handedOn = false;
+			try {
+				BufferedImage image = ImageIO.read(file);
+				if (image == null) throw new IOException("not an image ImageIO can decode");
+				processors.execute(new Process(index, file, image));
+				handedOn = true;
+			}
+			catch (Exception e) {
+				System.err.println("Skipping `" + file + "': " + e);
+			}
+			finally {
+				if (!handedOn) failed(index);
+			}
+		}
+	}
+
+	/**
+	 * Finds and recolors the regions in an image, then hands a copy of the result on for writing,
+	 * since the finder reuses its recolored image.
+	 */
+	private class Process implements Runnable {
+		private final int index;
+		private final File file;
+		private final BufferedImage image;
+
+		Process(int index, File file, BufferedImage image) {
+			this.index = index;
+			this.file = file;
+			this.image = image;
+		}
+
+		public void run() {
+			boolean handedOn = false;
+			try {
+				RegionFinder finder = finders.get();
+				finder.setImage(image);
+				StringBuilder line = new StringBuilder(file.getName());
+				if (targets.size() == 1) {
+					finder.findRegions(targets.get(0).getColor());
+					HeadlessTracker.report(finder.getRegions(), line);
+					finder.recolorImage(targets.get(0).getPaintColor().getRGB(), 'r');
+				}
+				else {
+					for (RegionSet regions : finder.findRegions(targets)) HeadlessTracker.report(regions, line);
+					finder.recolorImage(targets, 'r');
+				}
+				summaries[index] = line.toString();
+				encoders.execute(new Encode(index, file, copy(finder.getRecoloredImage())));
+				handedOn = true;
+			}
+			catch (Exception e) {
+				System.err.println("Skipping `" + file + "': " + e);
+			}
+			finally {
+				if (!handedOn) failed(index);
+			}
+		}
+	}
+
+	/**
+	 * Writes a recolored image.
+	 */
+	private class Encode implements Runnable {
+		private final int index;
+		private final File file;
+		private final BufferedImage image;
+
+		Encode(int index, File file, BufferedImage image) {
+			this.index = index;
+			this.file = file;
+			this.image = image;
+		}
+
+		public void run() {
+			boolean written = false;
+			try {
+				if (!ImageIO.write(image, "png", new File(output, outputName(file)))) throw new IOException("no png writer");
+				written = true;
+			}
+			catch (Exception e) {
+				System.err.println("Skipping `" + file + "': " + e);
+			}
+			finally {
+				if (written) {
+					done.incrementAndGet();
+					inFlight.release();
+				}
+				else {
+					failed(index);
+				}
+			}
+		}
+	}
+
+	private static BufferedImage copy(BufferedImage image) {
+		BufferedImage copy = new BufferedImage(image.getWidth(), image.getHeight(), image.getType());
+		int[] from = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+		System.arraycopy(from, 0, ((DataBufferInt) copy.getRaster().getDataBuffer()).getData(), 0, from.length);
+		return copy;
+	}
+
+	/**
+	 * The image files named: everything readable in a directory, or the files matching a glob,
+	 * whose directory part is taken literally (e.g. shots/*.jpg, or *.png for the current directory).
+	 */
+	static File[] files(String images) throws IOException {
+		File directory = new File(images);
+		PathMatcher matcher = null;
+		if (!directory.isDirectory()) {
+			File parent = directory.getParentFile();
+			matcher = FileSystems.getDefault().getPathMatcher("glob:" + directory.getName());
+			directory = parent != null ? parent : new File(".");
+		}
+		File[] listed = directory.listFiles();
+		if (listed == null) throw new IOException("can't list `" + directory + "'");
+		ArrayList<File> files = new ArrayList<File>();
+		for (File f : listed) {
+			if (!f.isFile()) continue;
+			if (matcher != null ? matcher.matches(f.toPath().getFileName()) : ImageDirectorySource.isImage(f)) files.add(f);
+		}
+		File[] sorted = files.toArray(new File[0]);
+		Arrays.sort(sorted);
+		return sorted;
+	}
+
+	/**
+	 * The most heap used at once since the peaks were last reset, in bytes.
+	 */
+	private static long peakHeap() {
+		long peak = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP && pool.getPeakUsage() != null) peak += pool.getPeakUsage().getUsed();
+		}
+		return peak;
+	}
+
+	public static void main(String[] args) throws Exception {
+		int threads = Runtime.getRuntime().availableProcessors();
+		if (args.length >= 2 && args[0].equals("--threads")) {
+			threads = Integer.parseInt(args[1]);
+			args = Arrays.copyOfRange(args, 2, args.length);
+		}
+		if (args.length != 3) {
+			System.err.println("usage: java BatchRecolor [--threads n] images targetColors outputDirectory");
+			System.err.println("  images: a directory or a glob like 'shots/*.jpg'; targetColors: hex RRGGBB[,RRGGBB...]");
+			System.exit(1);
+		}
+		File[] files = files(args[0]);
+		File output = new File(args[2]);
+		if (!output.isDirectory() && !output.mkdirs()) {
+			System.err.println("Couldn't make output directory `" + output + "'");
+			System.exit(1);
+		}
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) pool.resetPeakUsage();
+		BatchRecolor batch = new BatchRecolor(HeadlessTracker.targets(args[1]), output, threads);
+		long start = System.nanoTime();
+		try {
+			batch.run(files);
+		}
+		catch (IOException e) {
+			System.err.println(e.getMessage());
+			System.exit(1);
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+		System.err.printf("%d images in %.2f s, %.1f images/s, %d failed, peak heap %d MB%n", batch.done.get(), seconds,
+				batch.done.get() / seconds, batch.failed.get(), peakHeap() >> 20);
+		if (batch.failed.get() > 0) System.exit(1);
+	}
+}
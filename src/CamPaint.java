@@ -1,7 +1,10 @@
 import javax.swing.*;
 import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Webcam-based drawing 
@@ -10,19 +13,34 @@ import java.util.ArrayList;
  * @author Chris Bailey-Kellogg, Spring 2015 (based on a different webcam app from previous terms)
  */
 public class CamPaint extends Webcam {
-	private char displayMode = 'w';			// what to display: 'w': live webcam, 'r': recolored image, 'p': painting
+	private volatile char displayMode = 'w';	// what to display: 'w': live webcam, 'r': recolored image, 'p': painting
 	private RegionFinder finder;			// handles the finding
-	private Color targetColor;          	// color of regions of interest (set by mouse press)
+	private volatile Color targetColor;    	// color of regions of interest (set by mouse press)
 	private Color paintColor = Color.blue;	// the color to put into the painting from the "brush"
-	private BufferedImage painting = null;			// the resulting masterpiece
+	private volatile BufferedImage painting = null;	// the resulting masterpiece
 	//brush mode will store what type of brush we want, defaults to x, meaning the brush is blue
-	private char brushMode = 'x';
+	private volatile char brushMode = 'x';
+	private volatile boolean clearRequested;	// set by 'c', acted on by the processing thread, which owns the finder
+	private volatile boolean tracking = false;	// 't' toggles searching near the last region first
+	private volatile int colorDiff = RegionFinder.defaultColorDiff;	// '+' and '-' loosen and tighten color matching
+	private volatile ColorMetric metric = ColorMetric.RGB_BOX;		// 'm' cycles through the ways of matching colors
+	private final RegionEventStream events = new RegionEventStream();	// each frame's regions, for any listeners
+	private volatile RegionFinder.RenderStyle style = RegionFinder.RenderStyle.FILL;	// 'v' cycles fill, outline, tint
+	private static final double latencyBudget = 20;	// milliseconds a frame may take to process, when adapting
+	private AdaptiveController adaptive;			// looks coarser or tracks less often to keep up
+	private volatile boolean adapting = false;		// 'a' toggles adapting to the time each frame takes
+	private volatile boolean incremental = false;	// 'n' toggles redoing only what changed since the last frame
+	private volatile boolean foregroundOnly = false;	// 'b' toggles searching only what's moving
+	private volatile boolean saveRecolored, savePainting;	// set by 'o' and 's', acted on by the processing thread
+	private volatile boolean recording = false;		// 'e' toggles recording the painting to a file
+	private volatile PaintRecorder recorder;		// the recording, started and stopped by the processing thread
 
 	/**
 	 * Initializes the region finder and the drawing
 	 */
 	public CamPaint() {
 		finder = new RegionFinder();
+		adaptive = new AdaptiveController(getFrameRate() > 0 ? getFrameRate() : 30, latencyBudget);
 		clearPainting();
 	}
 
@@ -33,18 +51,16 @@ public class CamPaint extends Webcam {
 		painting = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
 		//I wanted the target color to reset if we clear the painting so that it doesn't keep tracking the same color
 		targetColor = null;
-		//if we don't clear largestCollection, all the previously found largest regions will instantly get painted
-		finder.clearLargestCollection();
+		//if we don't clear the paint layer, the old strokes will instantly show up again
+		clearRequested = true;
 	}
 
 	/**
-	 * DrawingGUI method, here drawing one of live webcam, recolored image, or painting, 
+	 * Webcam method, here drawing one of live webcam, recolored image, or painting,
 	 * depending on display variable ('w', 'r', or 'p')
 	 */
 	@Override
-	public void draw(Graphics g) {
-		//only do something if there's a target color
-		if (this.targetColor != null ) processImage(this.targetColor);
+	public void drawFrame(Graphics g) {
 		if(targetColor != null) {
 			//if there is a target color, paint
 			g.drawImage(painting,0,0, null);
@@ -55,9 +71,77 @@ public class CamPaint extends Webcam {
 	}
 
 	/**
-	 * Webcam method, here finding regions and updating the painting.
+	 * Webcam method, here finding regions and updating the painting, once per grabbed frame.
+	 */
+	@Override
+	public void processImage() {
+		if (clearRequested) {
+			clearRequested = false;
+			finder.clearPaintLayer();
+		}
+		if (finder.isTracking() != tracking) finder.setTracking(tracking);
+		if (finder.isIncremental() != incremental) finder.setIncremental(incremental);
+		if ((finder.getBackgroundModel() != null) != foregroundOnly) {
+			finder.setBackgroundModel(foregroundOnly ? new BackgroundModel() : null);
+		}
+		finder.setMaxColorDiff(colorDiff);
+		finder.setColorMetric(metric);
+		finder.setRenderStyle(style);
+		//only do something if there's a target color
+		Color targetColor = this.targetColor;
+		if (targetColor != null) processImage(targetColor);
+		// saving copies the image here, between frames, and leaves encoding and writing it to another thread
+		if (saveRecolored) {
+			saveRecolored = false;
+			if (finder.getRecoloredImage() != null) saveImageLater(finder.getRecoloredImage(), "recolored.png", "png");
+		}
+		if (savePainting) {
+			savePainting = false;
+			saveImageLater(painting, "painting.png", "png");
+		}
+		if (recording != (recorder != null)) {
+			if (recording) startRecording();
+			else stopRecording();
+		}
+	}
+
+	/**
+	 * Starts recording the painting to a new file, named for the time.
+	 */
+	private void startRecording() {
+		File file = new File(String.format("painting-%tY%<tm%<td-%<tH%<tM%<tS.paint", System.currentTimeMillis()));
+		try {
+			recorder = new PaintRecorder(file, image.getWidth(), image.getHeight());
+			System.out.println("Recording the painting in " + file);
+		}
+		catch (IOException e) {
+			System.err.println("Couldn't record in `" + file + "': " + e);
+			recording = false;
+		}
+	}
+
+	/**
+	 * Stops recording, finishing the file on another thread.
+	 */
+	private void stopRecording() {
+		final PaintRecorder done = recorder;
+		recorder = null;
+		new Thread(new Runnable() {
+			public void run() {
+				try {
+					done.close();
+					System.out.println("Recorded " + done.getRecorded() + " frames (" + done.getDropped() + " dropped)");
+				}
+				catch (IOException e) {
+					System.err.println("Recording failed: " + e);
+				}
+			}
+		}, "paint recorder close").start();
+	}
+
+	/**
+	 * Finds regions of the target color and updates the painting.
 	 */
-	//@Override
 	public void processImage(Color targetColor) {
 		//x makes brush blue
 		if(brushMode == 'x') {
@@ -72,10 +156,54 @@ public class CamPaint extends Webcam {
 		//first we have to set the image
 			finder.setImage(this.image);
 		//then we find the regions, recolor, and update painting
-			finder.findRegions(targetColor);
+		//when adapting, some frames skip the finding and just recolor with the last frame's regions
+			PipelineStats stats = getStats();
+			boolean adapting = this.adapting;
+			long start = System.nanoTime(), processStart = start;
+			boolean find = !adapting || adaptive.nextFrame();
+			if (find) {
+				finder.setDetectionStep(adapting ? adaptive.getStep() : 1);
+				finder.findRegions(targetColor);
+				stats.record(PipelineStats.Stage.FIND_REGIONS, start);
+				if (events.hasListeners()) events.publish(finder.getRegions());
+				start = System.nanoTime();		// so publishing isn't counted as recoloring
+			}
 			finder.recolorImage(paintColor.getRGB(), displayMode);
 			painting = finder.getRecoloredImage();
+			long end = stats.record(PipelineStats.Stage.RECOLOR, start);
+			if (recorder != null) recorder.record(finder.getPaintLayer());	// just the strokes, which change sparsely
+			if (adapting && find) adaptive.processed(end - processStart);
+
+	}
 
+	/**
+	 * The regions found in each frame, for anything else that wants to follow them.
+	 */
+	public RegionEventStream getRegionEvents() {
+		return events;
+	}
+
+	/**
+	 * Webcam method, adding what the adaptive controller, incremental mode, background model and recorder are doing,
+	 * when they're on.
+	 */
+	@Override
+	public List<String> overlayText() {
+		List<String> lines = super.overlayText();
+		if (lines != null && adapting) lines.add(adaptive.toString());
+		if (lines != null && incremental) {
+			lines.add(String.format("incremental: %.0f%% of tiles unchanged", 100 * finder.getSkippedTileFraction()));
+		}
+		PaintRecorder recorder = this.recorder;
+		if (lines != null && recorder != null) {
+			lines.add(String.format("recording: %d frames, %d dropped, %d KB", recorder.getRecorded(), recorder.getDropped(),
+					recorder.getBytes() / 1024));
+		}
+		BackgroundModel background = finder.getBackgroundModel();
+		if (lines != null && background != null) {
+			lines.add(String.format("foreground: %.1f%% of the frame", 100 * background.getForegroundFraction()));
+		}
+		return lines;
 	}
 
 	/**
@@ -101,11 +229,45 @@ public class CamPaint extends Webcam {
 		else if (k == 'c') { // clear
 			clearPainting();
 		}
-		else if (k == 'o') { // save the recolored image
-			saveImage(finder.getRecoloredImage(), "recolored.png", "png");
+		else if (k == 'o') { // save the recolored image (after the frame being processed)
+			saveRecolored = true;
 		}
 		else if (k == 's') { // save the painting
-			saveImage(painting, "painting.png", "png");
+			savePainting = true;
+		}
+		else if (k == 'e') { // start or stop recording the painting, for PaintReplay
+			recording = !recording;
+		}
+		else if (k == 't') { // toggle tracking near the last region
+			tracking = !tracking;
+			System.out.println("tracking " + (tracking ? "on" : "off"));
+		}
+		else if (k == '+' || k == '=' || k == '-') { // loosen or tighten color matching
+			colorDiff = Math.max(1, colorDiff + (k == '-' ? -2 : 2));
+			System.out.println("color tolerance " + colorDiff);
+		}
+		else if (k == 'm') { // next way of matching colors
+			metric = ColorMetric.values()[(metric.ordinal() + 1) % ColorMetric.values().length];
+			System.out.println("color metric " + metric);
+		}
+		else if (k == 'v') { // next way of drawing regions
+			style = RegionFinder.RenderStyle.values()[(style.ordinal() + 1) % RegionFinder.RenderStyle.values().length];
+			System.out.println("render style " + style);
+		}
+		else if (k == 'i') { // show or hide the timings
+			setOverlay(!isOverlay());
+		}
+		else if (k == 'a') { // toggle looking coarser and tracking less often, to keep up
+			adapting = !adapting;
+			System.out.println("adapting " + (adapting ? "on" : "off"));
+		}
+		else if (k == 'n') { // toggle redoing only what changed since the last frame
+			incremental = !incremental;
+			System.out.println("incremental " + (incremental ? "on" : "off"));
+		}
+		else if (k == 'b') { // toggle searching only the moving foreground (the background is learned afresh)
+			foregroundOnly = !foregroundOnly;
+			System.out.println("foreground only " + (foregroundOnly ? "on" : "off"));
 		}
 		//These are the brushes I added
 		else if(k == 'x' || k == 'y' || k == 'z') {
@@ -0,0 +1,73 @@
+import org.bytedeco.javacv.FrameGrabber;
+import org.bytedeco.javacv.Java2DFrameConverter;
+import org.bytedeco.javacv.OpenCVFrameConverter;
+import org.bytedeco.opencv.opencv_core.IplImage;
+
+import java.awt.image.BufferedImage;
+
+import static org.bytedeco.opencv.global.opencv_core.cvCopy;
+import static org.bytedeco.opencv.global.opencv_core.cvFlip;
+import static org.bytedeco.opencv.global.opencv_imgproc.cvResize;
+
+/**
+ * Compares the old grab-to-regions path (a new native image per resize, then Java2DFrameConverter,
+ * then findRegions going through getRGB) with the reusing CaptureConverter path that Webcam now uses.
+ * Runs headless on a SyntheticFrameGrabber: java CaptureBenchmark [seconds per measurement]
+ */
+public class CaptureBenchmark {
+	private static final int[][] sizes = { { 1280, 720 }, { 1920, 1080 } };
+
+	public static void main(String[] args) throws Exception {
+		double seconds = args.length > 0 ? Double.parseDouble(args[0]) : 2;
+		System.out.printf("%-28s %12s %14s%n", "benchmark", "frames/s", "bytes/frame");
+		for (int[] size : sizes) {
+			final int width = size[0] / 2, height = size[1] / 2;		// Webcam's usual half scale
+			final FrameGrabber grabber = new SyntheticFrameGrabber(size[0], size[1], 8);
+			grabber.start();
+			final OpenCVFrameConverter.ToIplImage grabberConverter = new OpenCVFrameConverter.ToIplImage();
+			final RegionFinder finder = new RegionFinder();
+
+			final Java2DFrameConverter paintConverter = new Java2DFrameConverter();
+			report(size[0] + "x" + size[1] + " old", RegionsBenchmark.measure(new RegionsBenchmark.Operation() {
+				public void run() {
+					try {
+						IplImage grabbed = grabberConverter.convert(grabber.grab());
+						cvFlip(grabbed, grabbed, 1);
+						IplImage resized = IplImage.create(width, height, grabbed.depth(), grabbed.nChannels());
+						cvResize(grabbed, resized);
+						finder.setImage(paintConverter.getBufferedImage(grabberConverter.convert(resized)));
+						finder.findRegions(SyntheticFrames.TARGET);
+					}
+					catch (FrameGrabber.Exception e) {
+						throw new RuntimeException(e);
+					}
+				}
+			}, seconds));
+
+			final CaptureConverter converter = new CaptureConverter(width, height, true);
+			final IplImage[] copy = new IplImage[1];
+			final BufferedImage[] image = new BufferedImage[1];
+			report(size[0] + "x" + size[1] + " reusing", RegionsBenchmark.measure(new RegionsBenchmark.Operation() {
+				public void run() {
+					try {
+						IplImage grabbed = grabberConverter.convert(grabber.grab());
+						if (copy[0] == null) copy[0] = grabbed.clone();		// as the pipeline's capture stage does
+						else cvCopy(grabbed, copy[0]);
+						image[0] = converter.convert(copy[0], image[0]);
+						finder.setImage(image[0]);
+						finder.findRegions(SyntheticFrames.TARGET);
+					}
+					catch (FrameGrabber.Exception e) {
+						throw new RuntimeException(e);
+					}
+				}
+			}, seconds));
+			grabber.stop();
+		}
+		System.exit(0);
+	}
+
+	private static void report(String name, RegionsBenchmark.Result result) {
+		System.out.printf("%-28s %12.1f %14.0f%n", name, result.opsPerSecond, result.bytesPerOp);
+	}
+}
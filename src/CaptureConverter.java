@@ -0,0 +1,109 @@
+import org.bytedeco.javacv.Java2DFrameConverter;
+import org.bytedeco.javacv.OpenCVFrameConverter;
+import org.bytedeco.opencv.opencv_core.IplImage;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.nio.ByteBuffer;
+
+import static org.bytedeco.opencv.global.opencv_core.IPL_DEPTH_8U;
+import static org.bytedeco.opencv.global.opencv_core.cvFlip;
+import static org.bytedeco.opencv.global.opencv_imgproc.cvResize;
+
+/**
+ * Turns grabbed camera images into TYPE_INT_RGB BufferedImages: mirrors, shrinks, and copies the pixels
+ * straight from native memory into the image's int raster, which RegionFinder then reads in place.
+ * The native resize buffer and the images are reused from frame to frame.
+ * Not thread-safe; each converting thread needs its own.
+ */
+public class CaptureConverter {
+	private final int width, height;				// size of the converted images
+	private final boolean mirror;					// whether to flip left<->right
+	private IplImage resized;						// reused native buffer for the shrunken image
+	private byte[] row = new byte[0];				// reused copy of one row of native pixels
+	private OpenCVFrameConverter.ToIplImage fallbackFrames;	// for pixel formats without a direct copy
+	private Java2DFrameConverter fallbackImages;
+	private PipelineStats stats;					// where to time flipping and resizing, if anywhere
+
+	public CaptureConverter(int width, int height, boolean mirror) {
+		this.width = width;
+		this.height = height;
+		this.mirror = mirror;
+	}
+
+	/**
+	 * Times the flip and resize of each conversion as the RESIZE stage (null to stop).
+	 */
+	public void setStats(PipelineStats stats) {
+		this.stats = stats;
+	}
+
+	/**
+	 * Converts a grabbed image (flipping it in place if mirroring), into reuse if it's a suitable image.
+	 */
+	public BufferedImage convert(IplImage grabbed, BufferedImage reuse) {
+		long start = System.nanoTime();
+		if (mirror) {
+			cvFlip(grabbed, grabbed, 1);
+		}
+		IplImage source = grabbed;
+		if (grabbed.width() != width || grabbed.height() != height) {
+			if (resized == null || resized.depth() != grabbed.depth() || resized.nChannels() != grabbed.nChannels()) {
+				if (resized != null) resized.release();
+				resized = IplImage.create(width, height, grabbed.depth(), grabbed.nChannels());
+			}
+			cvResize(grabbed, resized);
+			source = resized;
+		}
+		PipelineStats stats = this.stats;
+		if (stats != null) stats.record(PipelineStats.Stage.RESIZE, start);
+		if (reuse == null || reuse.getType() != BufferedImage.TYPE_INT_RGB
+				|| reuse.getWidth() != width || reuse.getHeight() != height) {
+			reuse = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		}
+		int[] rgb = ((DataBufferInt) reuse.getRaster().getDataBuffer()).getData();
+		if (source.depth() == IPL_DEPTH_8U && (source.nChannels() == 3 || source.nChannels() == 1)) {
+			copyPixels(source, rgb);
+		}
+		else {
+			// unusual formats go the long way round, through JavaCV's own conversion
+			if (fallbackFrames == null) {
+				fallbackFrames = new OpenCVFrameConverter.ToIplImage();
+				fallbackImages = new Java2DFrameConverter();
+			}
+			Graphics2D g = reuse.createGraphics();
+			try {
+				g.drawImage(fallbackImages.getBufferedImage(fallbackFrames.convert(source)), 0, 0, null);
+			}
+			finally {
+				g.dispose();
+			}
+		}
+		return reuse;
+	}
+
+	/**
+	 * Packs 8-bit BGR (or gray) native pixels into RGB ints, a row at a time, skipping any row padding.
+	 */
+	private void copyPixels(IplImage source, int[] rgb) {
+		ByteBuffer bytes = source.createBuffer();		// 8-bit depth, so a ByteBuffer view of the pixels
+		int channels = source.nChannels(), step = source.widthStep(), rowBytes = width * channels;
+		if (row.length < rowBytes) row = new byte[rowBytes];
+		for (int y = 0, p = 0; y < height; y++) {
+			bytes.position(y * step);
+			bytes.get(row, 0, rowBytes);
+			if (channels == 3) {
+				for (int i = 0; i < rowBytes; i += 3, p++) {
+					rgb[p] = (row[i + 2] & 0xff) << 16 | (row[i + 1] & 0xff) << 8 | (row[i] & 0xff);
+				}
+			}
+			else {
+				for (int i = 0; i < rowBytes; i++, p++) {
+					int gray = row[i] & 0xff;
+					rgb[p] = gray << 16 | gray << 8 | gray;
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,82 @@
+import java.awt.*;
+
+/**
+ * Ways of deciding whether a pixel's color is close enough to a target color, given a tolerance
+ * (on the 0-255 scale of the channels compared).
+ * Each converts a color to three coordinates once, then compares coordinates.
+ */
+public enum ColorMetric {
+	/** Each of red, green and blue within the tolerance (the original test). */
+	RGB_BOX {
+		void convert(int r, int g, int b, float[] out) {
+			out[0] = r;
+			out[1] = g;
+			out[2] = b;
+		}
+
+		boolean close(float[] c, float[] target, int tolerance) {
+			return Math.abs(c[0] - target[0]) < tolerance && Math.abs(c[1] - target[1]) < tolerance
+					&& Math.abs(c[2] - target[2]) < tolerance;
+		}
+	},
+
+	/** Straight-line distance in RGB within the tolerance. */
+	RGB_DISTANCE {
+		void convert(int r, int g, int b, float[] out) {
+			RGB_BOX.convert(r, g, b, out);
+		}
+
+		boolean close(float[] c, float[] target, int tolerance) {
+			float dr = c[0] - target[0], dg = c[1] - target[1], db = c[2] - target[2];
+			return dr * dr + dg * dg + db * db < tolerance * tolerance;
+		}
+	},
+
+	/** Hue (around the color wheel) and saturation each within the tolerance, whatever the brightness. */
+	HSV {
+		void convert(int r, int g, int b, float[] out) {
+			Color.RGBtoHSB(r, g, b, out);
+			out[0] *= 255;
+			out[1] *= 255;
+			out[2] *= 255;
+		}
+
+		boolean close(float[] c, float[] target, int tolerance) {
+			float dh = Math.abs(c[0] - target[0]);
+			return Math.min(dh, 255 - dh) < tolerance && Math.abs(c[1] - target[1]) < tolerance;
+		}
+	},
+
+	/** Both chroma channels (Cb and Cr) within the tolerance, whatever the brightness (Y). */
+	YCBCR {
+		void convert(int r, int g, int b, float[] out) {
+			out[0] = 0.299f * r + 0.587f * g + 0.114f * b;
+			out[1] = 128 - 0.168736f * r - 0.331264f * g + 0.5f * b;
+			out[2] = 128 + 0.5f * r - 0.418688f * g - 0.081312f * b;
+		}
+
+		boolean close(float[] c, float[] target, int tolerance) {
+			return Math.abs(c[1] - target[1]) < tolerance && Math.abs(c[2] - target[2]) < tolerance;
+		}
+	};
+
+	/**
+	 * Sets out to the metric's coordinates for a color.
+	 */
+	abstract void convert(int r, int g, int b, float[] out);
+
+	/**
+	 * Whether coordinates c are close enough to the target's.
+	 */
+	abstract boolean close(float[] c, float[] target, int tolerance);
+
+	/**
+	 * Whether two colors are close enough (slow; for one-off tests rather than every pixel).
+	 */
+	public boolean matches(Color c, Color target, int tolerance) {
+		float[] a = new float[3], b = new float[3];
+		convert(c.getRed(), c.getGreen(), c.getBlue(), a);
+		convert(target.getRed(), target.getGreen(), target.getBlue(), b);
+		return close(a, b, tolerance);
+	}
+}
@@ -0,0 +1,52 @@
+import java.awt.*;
+
+/**
+ * A color to look for, how close a pixel's color must be to it to count, and the color to paint its region in.
+ * What "close" means is up to the finder's ColorMetric: with RGB_BOX each channel must differ by less than the
+ * tolerance, with RGB_DISTANCE the distance in RGB must be less, and HSV and YCBCR compare hue and saturation or
+ * the chroma channels instead, all on a 0-255 scale.
+ */
+public class ColorTarget {
+	private final Color color;
+	private final int tolerance;				// how close a pixel must be, as measured by the finder's ColorMetric
+	private final Color paintColor;
+
+	public ColorTarget(Color color, int tolerance, Color paintColor) {
+		this.color = color;
+		this.tolerance = tolerance;
+		this.paintColor = paintColor;
+	}
+
+	/**
+	 * A target with RegionFinder's usual tolerance, painted in its own color.
+	 */
+	public ColorTarget(Color color) {
+		this(color, RegionFinder.defaultColorDiff, color);
+	}
+
+	public Color getColor() {
+		return color;
+	}
+
+	public int getTolerance() {
+		return tolerance;
+	}
+
+	public Color getPaintColor() {
+		return paintColor;
+	}
+
+	public boolean equals(Object o) {
+		if (!(o instanceof ColorTarget)) return false;
+		ColorTarget t = (ColorTarget) o;
+		return color.equals(t.color) && tolerance == t.tolerance && paintColor.equals(t.paintColor);
+	}
+
+	public int hashCode() {
+		return (color.hashCode() * 31 + tolerance) * 31 + paintColor.hashCode();
+	}
+
+	public String toString() {
+		return "ColorTarget[" + color + " +-" + tolerance + " -> " + paintColor + "]";
+	}
+}
@@ -4,6 +4,10 @@ import java.awt.*;
 import java.awt.event.*;
 import java.awt.image.BufferedImage;
 import java.io.File;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * A simple JFrame containing a single component for drawing (via the draw method)
@@ -16,6 +20,8 @@ public class DrawingGUI extends JFrame {
     protected int width, height;					// the size of the drawing window
     protected Timer timer;							// one delay-driven event
     private static final int delay = 100;			// default delay for the timer (milliseconds)
+    private volatile boolean overlay = false;		// whether to show overlayText() over the drawing
+    private static ExecutorService saver;			// saves images in the background, started by the first saveImageLater
 
     /**
      * Creates an empty, title-less frame.
@@ -60,6 +66,7 @@ public class DrawingGUI extends JFrame {
             public void paintComponent(Graphics g) {
                 super.paintComponent(g);
                 draw(g);  //our object's drawing method call
+                if (overlay) drawOverlay(g);
             }
         };
 
@@ -124,6 +131,43 @@ public class DrawingGUI extends JFrame {
     public void draw(Graphics g) {
     }
 
+    /**
+     * Lines of text to show over the drawing when the overlay is on, to be overridden by subclasses.
+     */
+    public List<String> overlayText() {
+        return null;
+    }
+
+    /**
+     * Turns the text overlay on or off.
+     */
+    public void setOverlay(boolean overlay) {
+        this.overlay = overlay;
+        if (canvas != null) canvas.repaint();
+    }
+
+    public boolean isOverlay() {
+        return overlay;
+    }
+
+    /**
+     * Draws the overlay text in the top left corner, white on a translucent box so it shows over anything.
+     */
+    private void drawOverlay(Graphics g) {
+        List<String> lines = overlayText();
+        if (lines == null || lines.isEmpty()) return;
+        g.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 11));
+        FontMetrics metrics = g.getFontMetrics();
+        int boxWidth = 0;
+        for (String line : lines) boxWidth = Math.max(boxWidth, metrics.stringWidth(line));
+        g.setColor(new Color(0, 0, 0, 160));
+        g.fillRect(0, 0, boxWidth + 8, lines.size() * metrics.getHeight() + 8);
+        g.setColor(Color.white);
+        for (int i = 0; i < lines.size(); i++) {
+            g.drawString(lines.get(i), 4, 4 + i * metrics.getHeight() + metrics.getAscent());
+        }
+    }
+
     /**
      * Method to handle a mouse press, to be overridden by subclasses.
      * @param x		x coordinate of mouse press
@@ -169,6 +213,31 @@ public class DrawingGUI extends JFrame {
         return image;
     }
 
+    /**
+     * Saves a copy of the image on a background thread, so the caller doesn't wait for it to be encoded and written.
+     * The copy is taken now, so the image can be drawn on again straight away.
+     */
+    public static void saveImageLater(BufferedImage image, final String filename, final String format) {
+        final BufferedImage copy = new BufferedImage(image.getColorModel(), image.copyData(null),
+                image.isAlphaPremultiplied(), null);
+        synchronized (DrawingGUI.class) {
+            if (saver == null) {
+                saver = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "image saver");
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+            }
+        }
+        saver.execute(new Runnable() {
+            public void run() {
+                saveImage(copy, filename, format);
+            }
+        });
+    }
+
     public static void saveImage(BufferedImage image, String filename, String format) {
         try {
             ImageIO.write(image, format, new File(filename));
@@ -0,0 +1,46 @@
+import java.awt.image.BufferedImage;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Triple-buffered handoff of finished frames from one writer thread to one reader thread (e.g. the Swing painter).
+ * The writer draws into its back buffer and publishes it; the reader always gets the latest published frame,
+ * which stays untouched for as long as the reader holds it. Neither side ever waits for the other,
+ * and the three images are reused for as long as the size stays the same.
+ */
+public class FrameExchange {
+	private static final int FRESH = 4;					// flag on middle: it holds a frame the reader hasn't seen
+
+	private final BufferedImage[] buffers = new BufferedImage[3];
+	private final AtomicInteger middle = new AtomicInteger(2);	// index of the buffer between writer and reader, plus FRESH
+	private int back = 0;								// index of the writer's buffer (writer thread only)
+	private int front = 1;								// index of the reader's buffer (reader thread only)
+
+	/**
+	 * The writer's buffer, (re)created at the given size if need be.
+	 */
+	public BufferedImage back(int width, int height) {
+		BufferedImage image = buffers[back];
+		if (image == null || image.getWidth() != width || image.getHeight() != height) {
+			image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+			buffers[back] = image;
+		}
+		return image;
+	}
+
+	/**
+	 * Hands the back buffer over to the reader, and takes whichever buffer the reader isn't using as the new back buffer.
+	 */
+	public void publish() {
+		back = middle.getAndSet(back | FRESH) & 3;
+	}
+
+	/**
+	 * The latest published frame, or null if nothing has been published yet.
+	 */
+	public BufferedImage front() {
+		if ((middle.get() & FRESH) != 0) {
+			front = middle.getAndSet(front) & 3;
+		}
+		return buffers[front];
+	}
+}
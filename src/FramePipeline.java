@@ -0,0 +1,235 @@
+import java.awt.image.BufferedImage;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs frame handling as a pipeline of stages, each on its own thread: capture and preprocess (both from a
+ * FrameSource), then process (which ends by asking for the result to be rendered). Stages hand frames along
+ * through FrameSlots. Live, when a stage falls behind, the frames waiting for it are replaced by newer ones
+ * instead of piling up; in batch (not dropping frames), each stage waits for the next instead.
+ * Frames and images are handed back to the earlier stages once used, so a handful of buffers go round and round.
+ * Each stage times itself (and counts what it allocates) in the pipeline's PipelineStats.
+ */
+public class FramePipeline<F> {
+	/**
+	 * The work done with each frame's image.
+	 */
+	public interface Processor {
+		/**
+		 * Does the real work on a frame's image.
+		 */
+		void process(BufferedImage image) throws Exception;
+
+		/**
+		 * Called after each process, to get the result shown.
+		 */
+		void render();
+	}
+
+	private final FrameSource<F> source;
+	private final Processor processor;
+	private final FrameSlot<F> captured = new FrameSlot<F>();						// capture -> preprocess
+	private final FrameSlot<BufferedImage> preprocessed = new FrameSlot<BufferedImage>();	// preprocess -> process
+	private final ConcurrentLinkedQueue<F> spareFrames = new ConcurrentLinkedQueue<F>();	// handed back to capture
+	private final ConcurrentLinkedQueue<BufferedImage> spareImages = new ConcurrentLinkedQueue<BufferedImage>();	// handed back to preprocess
+	private volatile long framePeriod;				// nanoseconds between captures, 0 for as fast as frames come
+	private volatile boolean dropFrames = true;		// whether a newer frame replaces one a stage hasn't got to yet
+	private final PipelineStats stats = new PipelineStats();	// how long the stages take
+	private Thread[] threads;
+
+	public FramePipeline(FrameSource<F> source, Processor processor, double frameRate) {
+		this.source = source;
+		this.processor = processor;
+		setFrameRate(frameRate);
+	}
+
+	/**
+	 * Sets the most frames per second to capture; 0 (or less) for no limit beyond the source's own rate.
+	 */
+	public void setFrameRate(double frameRate) {
+		framePeriod = frameRate > 0 ? (long) (1e9 / frameRate) : 0;
+	}
+
+	public double getFrameRate() {
+		long period = framePeriod;
+		return period > 0 ? 1e9 / period : 0;
+	}
+
+	/**
+	 * Whether to drop frames a later stage isn't ready for (live sources), or wait for it (recorded input).
+	 */
+	public void setDropFrames(boolean dropFrames) {
+		this.dropFrames = dropFrames;
+	}
+
+	/**
+	 * Frames dropped so far because a later stage hadn't taken the previous one yet.
+	 */
+	public long getDropped() {
+		return captured.getDropped() + preprocessed.getDropped();
+	}
+
+	/**
+	 * Timings and counts for the stages; the processor can add its own stages' times.
+	 */
+	public PipelineStats getStats() {
+		return stats;
+	}
+
+	/**
+	 * Starts the stage threads; the source should already be started.
+	 */
+	public synchronized void start() {
+		if (threads != null) return;
+		threads = new Thread[] {
+				new Thread(new Runnable() {
+					public void run() {
+						captureLoop();
+					}
+				}, "capture"),
+				new Thread(new Runnable() {
+					public void run() {
+						preprocessLoop();
+					}
+				}, "preprocess"),
+				new Thread(new Runnable() {
+					public void run() {
+						processLoop();
+					}
+				}, "process")
+		};
+		for (Thread t : threads) {
+			t.setDaemon(true);
+			t.start();
+		}
+	}
+
+	/**
+	 * Stops the stage threads and waits for them to finish.
+	 */
+	public synchronized void stop() throws InterruptedException {
+		if (threads == null) return;
+		for (Thread t : threads) t.interrupt();
+		for (Thread t : threads) t.join();
+		threads = null;
+	}
+
+	/**
+	 * Waits until the source runs out and every frame it gave has been processed.
+	 */
+	public void awaitFinished() throws InterruptedException {
+		Thread[] running;
+		synchronized (this) {
+			running = threads;
+		}
+		if (running != null) {
+			for (Thread t : running) t.join();
+		}
+	}
+
+	private void captureLoop() {
+		try {
+			long next = System.nanoTime();
+			while (!Thread.currentThread().isInterrupted()) {
+				long period = framePeriod;
+				if (period > 0) {
+					// hold to the frame rate, without trying to catch up on time already lost
+					long wait = next - System.nanoTime();
+					if (wait > 0) LockSupport.parkNanos(this, wait);
+					next = Math.max(next, System.nanoTime() - period) + period;
+				}
+				long start = System.nanoTime(), allocated = PipelineStats.allocatedBytes();
+				F frame = source.grab(spareFrames.poll());
+				if (frame == null) break;			// out of frames
+				stats.record(PipelineStats.Stage.GRAB, start);
+				stats.allocated(PipelineStats.allocatedBytes() - allocated);
+				if (dropFrames) {
+					F dropped = captured.offer(frame);
+					if (dropped != null) {
+						spareFrames.offer(dropped);
+						stats.dropped();
+					}
+				}
+				else {
+					captured.put(frame);
+				}
+			}
+		}
+		catch (InterruptedException e) {
+			// stopped
+		}
+		catch (Exception e) {
+			failed("capture", e);
+		}
+		captured.close();
+	}
+
+	private void preprocessLoop() {
+		try {
+			F frame;
+			while ((frame = captured.take()) != null) {
+				long start = System.nanoTime(), allocated = PipelineStats.allocatedBytes();
+				BufferedImage image = source.toImage(frame, spareImages.poll());
+				stats.record(PipelineStats.Stage.CONVERT, start);
+				stats.allocated(PipelineStats.allocatedBytes() - allocated);
+				spareFrames.offer(frame);
+				if (dropFrames) {
+					BufferedImage dropped = preprocessed.offer(image);
+					if (dropped != null) {
+						spareImages.offer(dropped);
+						stats.dropped();
+					}
+				}
+				else {
+					preprocessed.put(image);
+				}
+			}
+		}
+		catch (InterruptedException e) {
+			// stopped
+		}
+		catch (Exception e) {
+			failed("preprocess", e);
+		}
+		preprocessed.close();
+	}
+
+	private void processLoop() {
+		BufferedImage shown = null;				// the last image rendered, left alone until the next one replaces it
+		try {
+			BufferedImage image;
+			while ((image = preprocessed.take()) != null) {
+				long allocated = PipelineStats.allocatedBytes();
+				processor.process(image);
+				long start = System.nanoTime();
+				processor.render();
+				stats.record(PipelineStats.Stage.PAINT, start);
+				stats.allocated(PipelineStats.allocatedBytes() - allocated);
+				stats.frameDone();
+				if (shown != null) spareImages.offer(shown);
+				shown = image;
+			}
+		}
+		catch (InterruptedException e) {
+			// stopped
+		}
+		catch (Exception e) {
+			failed("process", e);
+		}
+	}
+
+	/**
+	 * Reports a stage that died, and stops the others rather than leave them waiting on it.
+	 */
+	private void failed(String stage, Exception e) {
+		System.err.println("Exception in " + stage + " stage!");
+		e.printStackTrace();
+		Thread[] running;
+		synchronized (this) {
+			running = threads;
+		}
+		if (running != null) {
+			for (Thread t : running) t.interrupt();
+		}
+	}
+}
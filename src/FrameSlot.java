@@ -0,0 +1,94 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A one-item, lock-free handoff between two threads. With offer() the latest item wins:
+ * it replaces one that hasn't been taken yet, and counts it as dropped. With put() nothing is dropped:
+ * it waits for the slot to empty. Only one thread may give and one thread may take.
+ */
+public class FrameSlot<T> {
+	private final AtomicReference<T> item = new AtomicReference<T>();
+	private final AtomicLong dropped = new AtomicLong();
+	private volatile Thread taker;						// the taking thread, while it's parked
+	private volatile Thread giver;						// the giving thread, while it's parked in put()
+	private volatile boolean closed;					// no more items are coming
+
+	/**
+	 * Puts an item in the slot, returning the item it replaced (dropped), or null if the slot was empty.
+	 */
+	public T offer(T next) {
+		T replaced = item.getAndSet(next);
+		if (replaced != null) dropped.incrementAndGet();
+		wake(taker);
+		return replaced;
+	}
+
+	/**
+	 * Puts an item in the slot, first waiting for the previous one to be taken.
+	 */
+	public void put(T next) throws InterruptedException {
+		while (!item.compareAndSet(null, next)) {
+			giver = Thread.currentThread();
+			if (item.get() != null) LockSupport.park(this);		// re-checked after registering, so a wakeup can't be missed
+			giver = null;
+			if (Thread.interrupted()) throw new InterruptedException();
+		}
+		wake(taker);
+	}
+
+	/**
+	 * Takes the item out of the slot, or returns null if it's empty.
+	 */
+	public T poll() {
+		T next = item.getAndSet(null);
+		if (next != null) wake(giver);
+		return next;
+	}
+
+	/**
+	 * Takes the item out of the slot, waiting for one if it's empty.
+	 * Returns null once the slot is closed and empty.
+	 */
+	public T take() throws InterruptedException {
+		T next;
+		while ((next = item.getAndSet(null)) == null) {
+			if (closed) {
+				next = item.getAndSet(null);		// whatever was given just before closing
+				break;
+			}
+			taker = Thread.currentThread();
+			if (item.get() == null && !closed) LockSupport.park(this);
+			taker = null;
+			if (Thread.interrupted()) throw new InterruptedException();
+		}
+		if (next != null) wake(giver);
+		return next;
+	}
+
+	/**
+	 * Whether there's no item waiting to be taken.
+	 */
+	public boolean isEmpty() {
+		return item.get() == null;
+	}
+
+	/**
+	 * Says no more items are coming; take() returns null once the last one is gone.
+	 */
+	public void close() {
+		closed = true;
+		wake(taker);
+	}
+
+	/**
+	 * How many items were replaced before being taken.
+	 */
+	public long getDropped() {
+		return dropped.get();
+	}
+
+	private static void wake(Thread t) {
+		if (t != null) LockSupport.unpark(t);
+	}
+}
@@ -0,0 +1,39 @@
+import java.awt.image.BufferedImage;
+
+/**
+ * Where frames come from: a camera, a video file, a directory of images, a generator...
+ * Grabbing and converting to an image are separate steps, so a pipeline can run them on different threads.
+ * F is the source's own raw frame type.
+ */
+public interface FrameSource<F> {
+	/**
+	 * Opens the source; after this the image size is known.
+	 */
+	void start() throws Exception;
+
+	/**
+	 * Width of the images made by toImage.
+	 */
+	int getWidth();
+
+	/**
+	 * Height of the images made by toImage.
+	 */
+	int getHeight();
+
+	/**
+	 * Grabs the next frame, reusing the given one (if not null) to hold it.
+	 * Returns null once the source has run out of frames.
+	 */
+	F grab(F reuse) throws Exception;
+
+	/**
+	 * Turns a grabbed frame into an image of the source's size, reusing the given one (if not null and suitable).
+	 */
+	BufferedImage toImage(F frame, BufferedImage reuse) throws Exception;
+
+	/**
+	 * Closes the source.
+	 */
+	void stop() throws Exception;
+}
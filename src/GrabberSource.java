@@ -0,0 +1,114 @@
+import org.bytedeco.javacv.FFmpegFrameGrabber;
+import org.bytedeco.javacv.Frame;
+import org.bytedeco.javacv.FrameGrabber;
+import org.bytedeco.javacv.OpenCVFrameGrabber;
+import org.bytedeco.javacv.OpenCVFrameConverter;
+import org.bytedeco.opencv.opencv_core.IplImage;
+
+import java.awt.image.BufferedImage;
+
+import static org.bytedeco.opencv.global.opencv_core.cvCopy;
+
+/**
+ * Frames from any JavaCV FrameGrabber: a webcam, a video file, or a SyntheticFrameGrabber.
+ * Grabbed images are copied out of the grabber (which reuses its own), optionally shrunk and mirrored,
+ * and converted with a CaptureConverter.
+ */
+public class GrabberSource implements FrameSource<IplImage> {
+	private final FrameGrabber grabber;				// JavaCV
+	private final double scale;						// to downsize the image (for speed), a fraction <= 1
+	private final boolean mirror;					// whether to mirror left<->right
+	private final boolean live;						// live sources keep retrying; recorded ones end when they run out
+	private final OpenCVFrameConverter.ToIplImage grabberConverter = new OpenCVFrameConverter.ToIplImage();
+	private CaptureConverter converter;				// flips, shrinks and converts
+	private PipelineStats stats;					// where the converter times flipping and shrinking, if anywhere
+	private int width, height;						// size after scaling
+
+	public GrabberSource(FrameGrabber grabber, double scale, boolean mirror, boolean live) {
+		this.grabber = grabber;
+		this.scale = scale;
+		this.mirror = mirror;
+		this.live = live;
+	}
+
+	/**
+	 * The default webcam.
+	 */
+	public static GrabberSource camera(boolean mac, double scale, boolean mirror) throws FrameGrabber.Exception {
+		FrameGrabber grabber;
+		if (mac) grabber = new OpenCVFrameGrabber(0); // this seems to work for Mac people
+		else grabber = FrameGrabber.createDefault(0);  // this seems to work for Windows people
+		return new GrabberSource(grabber, scale, mirror, true);
+	}
+
+	/**
+	 * A video file, played once through as fast as it can be decoded.
+	 */
+	public static GrabberSource video(String filename, double scale) {
+		return new GrabberSource(new FFmpegFrameGrabber(filename), scale, false, false);
+	}
+
+	public void start() throws Exception {
+		grabber.start();
+		width = grabber.getImageWidth();
+		height = grabber.getImageHeight();
+		System.out.println("Native frame size "+width+"*"+height);
+		if (scale != 1) {
+			width = (int)(width*scale);
+			height = (int)(height*scale);
+			System.out.println("Scaled to "+width+"*"+height);
+		}
+		converter = new CaptureConverter(width, height, mirror);
+		converter.setStats(stats);
+	}
+
+	/**
+	 * Times flipping and shrinking each frame as the RESIZE stage of the given stats.
+	 */
+	public void setStats(PipelineStats stats) {
+		this.stats = stats;
+		if (converter != null) converter.setStats(stats);
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	public IplImage grab(IplImage reuse) throws Exception {
+		IplImage grabbed = null;
+		while (grabbed == null) {
+			Frame frame;
+			try {
+				frame = grabber.grab();
+			}
+			catch (FrameGrabber.Exception e) {
+				if (!live) throw e;
+				frame = null;
+			}
+			if (frame == null) {
+				if (!live) return null;		// end of the recording
+				Thread.sleep(100); // wait a bit
+			}
+			else if (frame.image != null) {	// skip audio
+				grabbed = grabberConverter.convert(frame);
+			}
+		}
+		// the grabber reuses its image on the next grab, so keep a copy for the later stages
+		if (reuse == null) return grabbed.clone();
+		cvCopy(grabbed, reuse);
+		return reuse;
+	}
+
+	public BufferedImage toImage(IplImage frame, BufferedImage reuse) {
+		return converter.convert(frame, reuse);
+	}
+
+	public void stop() throws Exception {
+		grabber.stop();
+		grabber.release();
+	}
+}
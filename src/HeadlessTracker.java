@@ -0,0 +1,241 @@
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Timer;
+import java.util.TimerTask;
+
+/**
+ * Runs the color tracking on recorded or generated frames with no window, as fast as the CPU allows,
+ * printing one line per frame: frame number, then for each target color the number of regions and the
+ * largest region's size and centroid.
+ * Usage: java HeadlessTracker [--events file] [--stats seconds] [--incremental] [--background] source targetColors
+ * [r|p [outputDirectory]]
+ * where source is a directory of images, a video file, or synthetic[:frames], and targetColors are hex RRGGBB,
+ * separated by commas to track several colors at once.
+ * With an output directory, each recolored frame is saved there as a png.
+ * With an events file, the regions are streamed to it each frame (binary if it ends in .bin, else CSV); with several
+ * colors, the first color's go to that file and each other's to one numbered after it (events-2.csv, events-3.csv...).
+ * Stage timings are logged to stderr every few seconds (5 unless given; 0 for only at the end).
+ * With --incremental, only what changed since the last frame is looked at again, and each line ends with
+ * the fraction of the frame's tiles that were skipped as unchanged (the first color only, as for several it's all redone).
+ * With --background, only what's moving is searched, against a background learned from the frames so far.
+ */
+public class HeadlessTracker implements FramePipeline.Processor {
+	private final RegionFinder finder = new RegionFinder();
+	private final List<ColorTarget> targets;		// the colors to track, each painted in its own color
+	private final char displayMode;					// 'r' or 'p' to recolor each frame, as CamPaint does
+	private final File output;						// where to save recolored frames, or null
+	private int frame;								// frames processed so far
+	private final RegionEventStream[] events;		// each target's regions, for any listeners
+	private PipelineStats stats = new PipelineStats();	// where to time finding and recoloring
+	private PrintStream out = System.out;			// where each frame's line goes, or null for nowhere
+
+	public HeadlessTracker(List<ColorTarget> targets, char displayMode, File output) {
+		this.targets = targets;
+		this.displayMode = displayMode;
+		this.output = output;
+		events = new RegionEventStream[targets.size()];
+		for (int t = 0; t < events.length; t++) events[t] = new RegionEventStream();
+	}
+
+	public void process(BufferedImage image) throws IOException {
+		finder.setImage(image);
+		long start = System.nanoTime();
+		List<RegionSet> found = null;				// several targets' regions; a single target's are the finder's
+		if (targets.size() == 1) finder.findRegions(targets.get(0).getColor());
+		else found = finder.findRegions(targets);
+		stats.record(PipelineStats.Stage.FIND_REGIONS, start);	// just the finding, not the publishing or printing
+		for (int t = 0; t < events.length; t++) {
+			if (events[t].hasListeners()) events[t].publish(found == null ? finder.getRegions() : found.get(t));
+		}
+		if (out != null) {
+			StringBuilder line = new StringBuilder().append(frame);
+			for (int t = 0; t < targets.size(); t++) report(found == null ? finder.getRegions() : found.get(t), line);
+			if (found == null && finder.isIncremental()) line.append(String.format(",%.3f", finder.getSkippedTileFraction()));
+			out.println(line);
+		}
+		if (displayMode == 'r' || displayMode == 'p') {
+			start = System.nanoTime();
+			if (targets.size() == 1) finder.recolorImage(targets.get(0).getPaintColor().getRGB(), displayMode);
+			else finder.recolorImage(targets, displayMode);
+			stats.record(PipelineStats.Stage.RECOLOR, start);
+			if (output != null) {
+				ImageIO.write(finder.getRecoloredImage(), "png", new File(output, String.format("frame%06d.png", frame)));
+			}
+		}
+		frame++;
+	}
+
+	/**
+	 * Adds the number of regions and the largest one's size and centroid to a line of output.
+	 */
+	static void report(RegionSet regions, StringBuilder line) {
+		int largest = regions.largest();
+		if (largest < 0) {
+			line.append(",0,0,,");
+		}
+		else {
+			line.append(String.format(",%d,%d,%.1f,%.1f", regions.size(), regions.regionSize(largest),
+					regions.centroidX(largest), regions.centroidY(largest)));
+		}
+	}
+
+	/**
+	 * Turns RegionFinder's incremental mode on or off.
+	 */
+	public void setIncremental(boolean incremental) {
+		finder.setIncremental(incremental);
+	}
+
+	/**
+	 * Searches only the moving foreground, with a new background model, or everywhere again.
+	 */
+	public void setForegroundOnly(boolean foregroundOnly) {
+		finder.setBackgroundModel(foregroundOnly ? new BackgroundModel() : null);
+	}
+
+	/**
+	 * The first target's regions, each frame.
+	 */
+	public RegionEventStream getRegionEvents() {
+		return events[0];
+	}
+
+	/**
+	 * The regions of the target at that index, each frame.
+	 */
+	public RegionEventStream getRegionEvents(int target) {
+		return events[target];
+	}
+
+	/**
+	 * Where to time finding and recoloring, normally the pipeline's own stats.
+	 */
+	public void setStats(PipelineStats stats) {
+		this.stats = stats;
+	}
+
+	/**
+	 * Where to print each frame's line, normally System.out; null prints nothing.
+	 */
+	public void setOutput(PrintStream out) {
+		this.out = out;
+	}
+
+	public void render() {
+		// nothing to show
+	}
+
+	/**
+	 * The target colors from the command line: hex RRGGBB, separated by commas.
+	 * Each is painted its own color, except that a single color is painted blue, as in CamPaint.
+	 */
+	static List<ColorTarget> targets(String colors) {
+		ArrayList<ColorTarget> targets = new ArrayList<ColorTarget>();
+		for (String color : colors.split(",")) {
+			targets.add(new ColorTarget(new Color(Integer.parseInt(color, 16))));
+		}
+		if (targets.size() == 1) targets.set(0, new ColorTarget(targets.get(0).getColor(), RegionFinder.defaultColorDiff, Color.blue));
+		return targets;
+	}
+
+	/**
+	 * Makes the source named on the command line: synthetic[:frames[:seed]], a directory, or a video file.
+	 */
+	static FrameSource<?> source(String name) throws Exception {
+		if (name.startsWith("synthetic")) {
+			String[] parts = name.split(":");
+			int frames = parts.length > 1 ? Integer.parseInt(parts[1]) : 1000;
+			long seed = parts.length > 2 ? Long.parseLong(parts[2]) : 1;
+			return new SyntheticSource(640, 480, frames, seed);
+		}
+		if (new File(name).isDirectory()) return new ImageDirectorySource(new File(name));
+		return GrabberSource.video(name, 1);
+	}
+
+	public static void main(String[] args) throws Exception {
+		File eventsFile = null;
+		double statsPeriod = 5;
+		boolean incremental = false, foregroundOnly = false;
+		while (args.length >= 2 && args[0].startsWith("--")) {
+			int used = 2;
+			if (args[0].equals("--events")) eventsFile = new File(args[1]);
+			else if (args[0].equals("--stats")) statsPeriod = Double.parseDouble(args[1]);
+			else if (args[0].equals("--incremental")) incremental = true;
+			else if (args[0].equals("--background")) foregroundOnly = true;
+			else break;
+			if (args[0].equals("--incremental") || args[0].equals("--background")) used = 1;
+			args = Arrays.copyOfRange(args, used, args.length);
+		}
+		if (args.length < 2) {
+			System.err.println("usage: java HeadlessTracker [--events file] [--stats seconds] [--incremental] [--background]"
+					+ " source targetColors [r|p [outputDirectory]]");
+			System.err.println("  source: a directory of images, a video file, or synthetic[:frames]; targetColors: hex RRGGBB[,RRGGBB...]");
+			System.exit(1);
+		}
+		FrameSource<?> source = source(args[0]);
+		HeadlessTracker tracker = new HeadlessTracker(targets(args[1]),
+				args.length > 2 ? args[2].charAt(0) : 'w', args.length > 3 ? new File(args[3]) : null);
+		tracker.setIncremental(incremental);
+		tracker.setForegroundOnly(foregroundOnly);
+		RegionEventSink[] sinks = new RegionEventSink[eventsFile != null ? tracker.events.length : 0];
+		for (int t = 0; t < sinks.length; t++) {
+			sinks[t] = new RegionEventSink(t == 0 ? eventsFile : numbered(eventsFile, t + 1));
+			tracker.events[t].subscribe(sinks[t]);
+		}
+		source.start();
+		long start = System.nanoTime();
+		FramePipeline<?> pipeline = pipeline(source, tracker);
+		pipeline.setDropFrames(false);			// recorded input: every frame gets processed
+		final PipelineStats stats = pipeline.getStats();
+		tracker.setStats(stats);
+		if (source instanceof GrabberSource) ((GrabberSource) source).setStats(stats);
+		stats.register("HeadlessTracker");
+		Timer statsLog = new Timer("stats log", true);
+		if (statsPeriod > 0) {
+			long period = (long) (statsPeriod * 1000);
+			statsLog.scheduleAtFixedRate(new TimerTask() {
+				public void run() {
+					logStats(stats);
+				}
+			}, period, period);
+		}
+		pipeline.start();
+		pipeline.awaitFinished();
+		statsLog.cancel();
+		source.stop();
+		for (int t = 0; t < sinks.length; t++) {
+			tracker.events[t].close();
+			sinks[t].close();
+			long dropped = tracker.events[t].getDropped();
+			if (dropped > 0) System.err.println(dropped + " region events dropped for " + tracker.targets.get(t));
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+		System.err.printf("%d frames in %.2f s, %.1f frames/s%n", tracker.frame, seconds, tracker.frame / seconds);
+		logStats(stats);
+	}
+
+	/**
+	 * The file with n put before its extension: events.csv, 2 gives events-2.csv.
+	 */
+	private static File numbered(File file, int n) {
+		String name = file.getName();
+		int dot = name.lastIndexOf('.');
+		if (dot <= 0) return new File(file.getParentFile(), name + "-" + n);
+		return new File(file.getParentFile(), name.substring(0, dot) + "-" + n + name.substring(dot));
+	}
+
+	private static void logStats(PipelineStats stats) {
+		for (String line : stats.summary()) System.err.println(line);
+	}
+
+	private static <F> FramePipeline<F> pipeline(FrameSource<F> source, FramePipeline.Processor processor) {
+		return new FramePipeline<F>(source, processor, 0);
+	}
+}
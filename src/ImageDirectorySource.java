@@ -0,0 +1,87 @@
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Frames from the image files in a directory, in filename order, each read once.
+ * Images are converted to TYPE_INT_RGB at the size of the first one (stretching any that differ).
+ */
+public class ImageDirectorySource implements FrameSource<BufferedImage> {
+	private final File[] files;
+	private int next;								// index of the next file to read
+	private int width, height;
+
+	public ImageDirectorySource(File directory) throws IOException {
+		File[] listed = directory.listFiles();
+		if (listed == null) throw new IOException("can't list `" + directory + "'");
+		ArrayList<File> images = new ArrayList<File>();
+		for (File f : listed) {
+			if (f.isFile() && isImage(f)) images.add(f);
+		}
+		files = images.toArray(new File[0]);
+		Arrays.sort(files);
+	}
+
+	/**
+	 * Whether a file's name says it's an image ImageIO can read.
+	 */
+	static boolean isImage(File file) {
+		String name = file.getName().toLowerCase();
+		return name.endsWith(".png") || name.endsWith(".jpg") || name.endsWith(".jpeg")
+				|| name.endsWith(".bmp") || name.endsWith(".gif");
+	}
+
+	public void start() throws IOException {
+		if (files.length == 0) throw new IOException("no images to read");
+		BufferedImage first = read(files[0]);
+		width = first.getWidth();
+		height = first.getHeight();
+		next = 0;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * Decodes the next file (the reuse image can't help ImageIO, so it's ignored).
+	 */
+	public BufferedImage grab(BufferedImage reuse) throws IOException {
+		if (next == files.length) return null;
+		return read(files[next++]);
+	}
+
+	public BufferedImage toImage(BufferedImage frame, BufferedImage reuse) {
+		if (reuse == null || reuse.getType() != BufferedImage.TYPE_INT_RGB
+				|| reuse.getWidth() != width || reuse.getHeight() != height) {
+			reuse = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		}
+		if (frame.getWidth() == width && frame.getHeight() == height) {
+			frame.getRGB(0, 0, width, height, ((DataBufferInt) reuse.getRaster().getDataBuffer()).getData(), 0, width);
+		}
+		else {
+			Graphics g = reuse.getGraphics();
+			g.drawImage(frame, 0, 0, width, height, null);
+			g.dispose();
+		}
+		return reuse;
+	}
+
+	public void stop() {
+	}
+
+	private static BufferedImage read(File file) throws IOException {
+		BufferedImage image = ImageIO.read(file);
+		if (image == null) throw new IOException("can't decode `" + file + "'");
+		return image;
+	}
+}
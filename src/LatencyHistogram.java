@@ -0,0 +1,104 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts how long something took, in log-spaced buckets: four per power of two of nanoseconds, so each
+ * bucket is within 19% of the next and the whole range fits in a fixed array, with no allocation per record.
+ * Recorded from one thread at a time, and read (approximately, while it's being recorded) from any.
+ */
+public class LatencyHistogram implements LatencyHistogramMBean {
+	private static final int subBuckets = 4;		// buckets per power of two
+	private final AtomicLongArray counts = new AtomicLongArray(64 * subBuckets);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong total = new AtomicLong();	// sum of everything recorded, in nanoseconds
+	private volatile long max;
+
+	/**
+	 * Counts something that took the given nanoseconds.
+	 */
+	public void record(long nanos) {
+		if (nanos < 0) nanos = 0;
+		counts.incrementAndGet(bucket(nanos));
+		total.addAndGet(nanos);
+		count.incrementAndGet();
+		if (nanos > max) max = nanos;
+	}
+
+	/**
+	 * The bucket holding nanos: which power of two it's in, then which quarter of that.
+	 */
+	static int bucket(long nanos) {
+		if (nanos < subBuckets) return (int) nanos;
+		int log = 63 - Long.numberOfLeadingZeros(nanos);
+		return log * subBuckets + (int) ((nanos >>> (log - 2)) & (subBuckets - 1));
+	}
+
+	/**
+	 * The smallest time in a bucket.
+	 */
+	static long bucketStart(int bucket) {
+		if (bucket < subBuckets) return bucket;
+		int log = bucket / subBuckets;
+		return (1L << log) + ((long) (bucket % subBuckets) << (log - 2));
+	}
+
+	public long getCount() {
+		return count.get();
+	}
+
+	/**
+	 * Mean time, in nanoseconds.
+	 */
+	public double getMean() {
+		long n = count.get();
+		return n > 0 ? (double) total.get() / n : 0;
+	}
+
+	public long getMax() {
+		return max;
+	}
+
+	/**
+	 * The time (in nanoseconds) that the given fraction (0-1) of recorded times are at most,
+	 * to the middle of its bucket.
+	 */
+	public long percentile(double fraction) {
+		long n = count.get();
+		if (n == 0) return 0;
+		long rank = Math.max(1, (long) Math.ceil(fraction * n)), seen = 0;
+		for (int b = 0; b < counts.length(); b++) {
+			seen += counts.get(b);
+			if (seen >= rank) {
+				long start = bucketStart(b), end = b + 1 < counts.length() ? bucketStart(b + 1) : Long.MAX_VALUE;
+				return Math.min(max, start + (end - start) / 2);
+			}
+		}
+		return max;
+	}
+
+	public double getMeanMillis() {
+		return getMean() / 1e6;
+	}
+
+	public double getMedianMillis() {
+		return percentile(0.5) / 1e6;
+	}
+
+	public double getP99Millis() {
+		return percentile(0.99) / 1e6;
+	}
+
+	public double getMaxMillis() {
+		return max / 1e6;
+	}
+
+	/**
+	 * Forgets everything recorded so far.
+	 */
+	public void reset() {
+		for (int b = 0; b < counts.length(); b++) counts.set(b, 0);
+		count.set(0);
+		total.set(0);
+		max = 0;
+	}
+}
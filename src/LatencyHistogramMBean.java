@@ -0,0 +1,16 @@
+/**
+ * What JMX shows of a LatencyHistogram.
+ */
+public interface LatencyHistogramMBean {
+	long getCount();
+
+	double getMeanMillis();
+
+	double getMedianMillis();
+
+	double getP99Millis();
+
+	double getMaxMillis();
+
+	void reset();
+}
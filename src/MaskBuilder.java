@@ -0,0 +1,59 @@
+/**
+ * Builds the bitmask of which pixels match a target color by the RGB box test (each channel within the
+ * tolerance), 64 pixels to a word, bit i of word w for pixel 64*w+i.
+ * The scalar builder is always there; a SIMD one using the incubating Vector API is used when it's been
+ * compiled (from src-vector) and the jdk.incubator.vector module is added at run time. Both give the same bits.
+ */
+public interface MaskBuilder {
+	/**
+	 * Sets mask bits [from,to) for pixels rgb[from..to) against the target channels; from must be a multiple of 64.
+	 */
+	void build(int[] rgb, int from, int to, int red, int green, int blue, int tolerance, long[] mask);
+
+	/**
+	 * One pixel at a time.
+	 */
+	MaskBuilder scalar = new MaskBuilder() {
+		public void build(int[] rgb, int from, int to, int red, int green, int blue, int tolerance, long[] mask) {
+			for (int word = from >> 6; (word << 6) < to; word++) {
+				long bits = 0;
+				for (int p = word << 6, end = Math.min(to, p + 64), bit = 0; p < end; p++, bit++) {
+					int c = rgb[p];
+					if (Math.abs(((c >> 16) & 0xff) - red) < tolerance
+							&& Math.abs(((c >> 8) & 0xff) - green) < tolerance
+							&& Math.abs((c & 0xff) - blue) < tolerance) {
+						bits |= 1L << bit;
+					}
+				}
+				mask[word] = bits;
+			}
+		}
+
+		public String toString() {
+			return "scalar";
+		}
+	};
+
+	/**
+	 * The SIMD builder if it's available, else null.
+	 */
+	static MaskBuilder vector() {
+		try {
+			return (MaskBuilder) Class.forName("VectorMaskBuilder").getDeclaredConstructor().newInstance();
+		}
+		catch (Exception e) {
+			return null;		// not compiled in
+		}
+		catch (LinkageError e) {
+			return null;		// compiled, but run without --add-modules jdk.incubator.vector
+		}
+	}
+
+	/**
+	 * The fastest builder available.
+	 */
+	static MaskBuilder best() {
+		MaskBuilder vector = vector();
+		return vector != null ? vector : scalar;
+	}
+}
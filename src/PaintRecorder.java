@@ -0,0 +1,228 @@
+import java.io.*;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.Deflater;
+
+/**
+ * Records a painting session to a file as it goes, without holding up the thread that paints.
+ * What's recorded is the paint layer (RegionFinder.getPaintLayer()), not the camera frame it's shown over: strokes
+ * change a few pixels a frame, so most frames are small deltas, whereas sensor noise changes nearly every pixel of
+ * a live frame and would make every delta about a whole frame. Replays show the strokes over transparency.
+ * record() copies the frame into a small ring of reused buffers and never waits: when the writer hasn't caught up
+ * and the ring is full, the frame is dropped and counted (the recording then just skips it).
+ * A writer thread encodes each frame against the last one written, as the runs of pixels that changed, with every
+ * keyframeInterval-th frame written whole, so PaintReplay can rebuild any frame from the keyframe before it.
+ * The file is: "PNTR", version (int), width, height (int), then per frame: kind ('K' whole or 'D' changed runs, byte),
+ * frame number (long), time since the first frame (long, nanoseconds), encoded length, deflated length (int),
+ * then the deflated encoding: a keyframe's pixels (int each), or a run count (int) and per run the unchanged pixels
+ * skipped and the run's length (varints) followed by its pixels. Everything is big-endian, as DataOutputStream writes.
+ */
+public class PaintRecorder implements Closeable {
+	static final int magic = 0x504e5452;				// "PNTR"
+	static final int version = 1;
+	public static final int defaultKeyframeInterval = 60;
+
+	private final int width, height;
+	private final int keyframeInterval;				// a whole frame every this many frames written
+	private final int[][] ring;						// reused frames waiting to be written; slot i%length
+	private final long[] frames, times;				// each slot's frame number and time
+	private final AtomicLong published = new AtomicLong();	// frames put in the ring so far
+	private final AtomicLong written = new AtomicLong();	// frames written so far
+	private final AtomicLong dropped = new AtomicLong();	// frames not recorded because the ring was full
+	private final DataOutputStream out;
+	private final Thread writer;
+	private volatile boolean waiting;					// whether the writer is parked for want of frames
+	private volatile boolean closed;
+	private volatile IOException failure;				// what stopped the writer, if anything
+	private long frame;									// number of the next frame recorded
+	private long start;									// when the first frame was recorded
+
+	// the writer's own
+	private final int[] previous;						// the last frame written
+	private byte[] encoded = new byte[1 << 16];			// a frame's encoding before deflating
+	private byte[] deflated = new byte[1 << 16];
+	private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+	private volatile long bytes;						// written to the file so far
+
+	/**
+	 * Starts recording frames of the given size to the file, with up to capacity frames waiting to be written.
+	 */
+	public PaintRecorder(File file, int width, int height, int capacity, int keyframeInterval) throws IOException {
+		this.width = width;
+		this.height = height;
+		this.keyframeInterval = keyframeInterval;
+		ring = new int[capacity][width * height];
+		frames = new long[capacity];
+		times = new long[capacity];
+		previous = new int[width * height];
+		out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+		out.writeInt(magic);
+		out.writeInt(version);
+		out.writeInt(width);
+		out.writeInt(height);
+		bytes = 16;
+		writer = new Thread(new Runnable() {
+			public void run() {
+				writeLoop();
+			}
+		}, "paint recorder");
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	public PaintRecorder(File file, int width, int height) throws IOException {
+		this(file, width, height, 4, defaultKeyframeInterval);
+	}
+
+	/**
+	 * Records the pixels (ARGB, row after row) as the next frame; returns false if it had to be dropped.
+	 * Only one thread may record.
+	 */
+	public boolean record(int[] pixels) {
+		if (pixels.length != width * height) {
+			throw new IllegalArgumentException("recording " + width + "x" + height + ", not " + pixels.length + " pixels");
+		}
+		long now = System.nanoTime();
+		if (frame == 0) start = now;
+		long slot = published.get();
+		boolean room = !closed && failure == null && slot - written.get() < ring.length;
+		if (room) {
+			int i = (int) (slot % ring.length);
+			System.arraycopy(pixels, 0, ring[i], 0, width * height);
+			frames[i] = frame;
+			times[i] = now - start;
+			published.set(slot + 1);
+			if (waiting) LockSupport.unpark(writer);
+		}
+		else {
+			dropped.incrementAndGet();
+		}
+		frame++;
+		return room;
+	}
+
+	public long getRecorded() {
+		return written.get();
+	}
+
+	/**
+	 * Frames dropped so far because the writer wasn't keeping up (or had failed).
+	 */
+	public long getDropped() {
+		return dropped.get();
+	}
+
+	/**
+	 * Bytes written to the file so far.
+	 */
+	public long getBytes() {
+		return bytes;
+	}
+
+	/**
+	 * Writes what's waiting, then stops the writer and closes the file; throws what stopped the writer, if anything.
+	 */
+	public void close() throws IOException {
+		closed = true;
+		LockSupport.unpark(writer);
+		try {
+			writer.join();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		deflater.end();
+		out.close();
+		if (failure != null) throw failure;
+	}
+
+	private void writeLoop() {
+		while (true) {
+			long next = written.get();
+			if (next == published.get()) {
+				if (closed) return;
+				waiting = true;
+				if (published.get() == next && !closed) LockSupport.parkNanos(this, 10000000L);	// re-checked after flagging
+				waiting = false;
+				continue;
+			}
+			int i = (int) (next % ring.length);
+			try {
+				write(ring[i], frames[i], times[i], next % keyframeInterval == 0);
+			}
+			catch (IOException e) {
+				failure = e;
+				System.err.println("Paint recording stopped: " + e);
+				return;
+			}
+			written.lazySet(next + 1);		// the slot can be reused now
+		}
+	}
+
+	/**
+	 * Writes a frame, whole or as the runs that changed since the last one.
+	 */
+	private void write(int[] pixels, long frame, long time, boolean keyframe) throws IOException {
+		int n = width * height, length;
+		if (keyframe) {
+			ensureEncoded(4 * n);
+			length = 0;
+			for (int p = 0; p < n; p++) length = putInt(pixels[p], length);
+		}
+		else {
+			length = 4;
+			int runs = 0, last = 0;
+			for (int p = 0; p < n; p++) {
+				if (pixels[p] == previous[p]) continue;
+				int end = p + 1;
+				while (end < n && pixels[end] != previous[end]) end++;
+				ensureEncoded(length + 10 + 4 * (end - p));
+				length = putVarint(p - last, length);
+				length = putVarint(end - p, length);
+				for (int q = p; q < end; q++) length = putInt(pixels[q], length);
+				runs++;
+				last = end;
+				p = end;
+			}
+			putInt(runs, 0);
+		}
+		System.arraycopy(pixels, 0, previous, 0, n);
+		deflater.reset();
+		deflater.setInput(encoded, 0, length);
+		deflater.finish();
+		int packed = 0;
+		while (!deflater.finished()) {
+			if (packed == deflated.length) deflated = Arrays.copyOf(deflated, deflated.length * 2);
+			packed += deflater.deflate(deflated, packed, deflated.length - packed);
+		}
+		out.writeByte(keyframe ? 'K' : 'D');
+		out.writeLong(frame);
+		out.writeLong(time);
+		out.writeInt(length);
+		out.writeInt(packed);
+		out.write(deflated, 0, packed);
+		bytes += 25 + packed;
+	}
+
+	private void ensureEncoded(int size) {
+		if (encoded.length < size) encoded = Arrays.copyOf(encoded, Math.max(size, encoded.length * 2));
+	}
+
+	private int putInt(int v, int at) {
+		encoded[at] = (byte) (v >>> 24);
+		encoded[at + 1] = (byte) (v >>> 16);
+		encoded[at + 2] = (byte) (v >>> 8);
+		encoded[at + 3] = (byte) v;
+		return at + 4;
+	}
+
+	private int putVarint(int v, int at) {
+		while ((v & ~0x7f) != 0) {
+			encoded[at++] = (byte) ((v & 0x7f) | 0x80);
+			v >>>= 7;
+		}
+		encoded[at++] = (byte) v;
+		return at;
+	}
+}
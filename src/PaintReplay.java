@@ -0,0 +1,244 @@
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.*;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads back a painting session written by PaintRecorder, rebuilding any recorded frame from the keyframe before it.
+ * Frames are the paint layer alone, transparent where nothing has been painted.
+ * Opening a recording only reads the frame headers, to index where each frame is in the file.
+ * Usage: java PaintReplay recording [frame|all [output]]
+ * With just the recording, prints what's in it; with a frame number, saves that frame as a png (output, or
+ * frameNNNNNN.png); with all, saves every recorded frame as a png in the output directory (or the current one).
+ */
+public class PaintReplay implements Closeable {
+	private final RandomAccessFile file;
+	private final int width, height;
+	private int count;									// frames in the recording
+	private long[] offsets = new long[64];				// where each frame's encoding starts in the file
+	private long[] frames = new long[64], times = new long[64];	// each one's frame number and time
+	private boolean[] keyframes = new boolean[64];
+	private int[] lengths = new int[64], packedLengths = new int[64];	// its encoded and deflated lengths
+
+	private final int[] pixels;							// the frame last rebuilt
+	private int current = -1;							// which one it is, or -1
+	private byte[] encoded = new byte[0], packed = new byte[0];
+	private final Inflater inflater = new Inflater();
+
+	public PaintReplay(File recording) throws IOException {
+		file = new RandomAccessFile(recording, "r");
+		try {
+			if (file.readInt() != PaintRecorder.magic) throw new IOException("not a paint recording");
+			if (file.readInt() != PaintRecorder.version) throw new IOException("unknown paint recording version");
+			width = file.readInt();
+			height = file.readInt();
+			pixels = new int[width * height];
+			index();
+		}
+		catch (IOException e) {
+			file.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Reads every frame's header, skipping over its pixels. A frame cut short (by the recorder being killed)
+	 * ends the recording.
+	 */
+	private void index() throws IOException {
+		long at = file.getFilePointer(), end = file.length();
+		while (at + 25 <= end) {
+			file.seek(at);
+			int kind = file.readByte();
+			long frame = file.readLong(), time = file.readLong();
+			int length = file.readInt(), packedLength = file.readInt();
+			if (kind != 'K' && kind != 'D') throw new IOException("bad frame at " + at);
+			if (at + 25 + packedLength > end) break;
+			if (count == offsets.length) {
+				offsets = Arrays.copyOf(offsets, count * 2);
+				frames = Arrays.copyOf(frames, count * 2);
+				times = Arrays.copyOf(times, count * 2);
+				keyframes = Arrays.copyOf(keyframes, count * 2);
+				lengths = Arrays.copyOf(lengths, count * 2);
+				packedLengths = Arrays.copyOf(packedLengths, count * 2);
+			}
+			offsets[count] = at + 25;
+			frames[count] = frame;
+			times[count] = time;
+			keyframes[count] = kind == 'K';
+			lengths[count] = length;
+			packedLengths[count] = packedLength;
+			count++;
+			at += 25 + packedLength;
+		}
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * How many frames were recorded (frames dropped while recording aren't in it).
+	 */
+	public int size() {
+		return count;
+	}
+
+	/**
+	 * The number of the i-th recorded frame, counting every frame offered to the recorder.
+	 */
+	public long frameNumber(int i) {
+		return frames[i];
+	}
+
+	/**
+	 * When the i-th recorded frame was recorded, in nanoseconds since the first.
+	 */
+	public long time(int i) {
+		return times[i];
+	}
+
+	public boolean isKeyframe(int i) {
+		return keyframes[i];
+	}
+
+	/**
+	 * The recorded frame showing what was painted as of the given frame number: the last one recorded at or before it,
+	 * or -1 if none was.
+	 */
+	public int indexOf(long frame) {
+		int i = Arrays.binarySearch(frames, 0, count, frame);
+		return i >= 0 ? i : -i - 2;
+	}
+
+	/**
+	 * Rebuilds the i-th recorded frame, returning its pixels (reused by the next call). Going forwards from the last
+	 * frame rebuilt just applies the changes in between; otherwise it starts from the keyframe before.
+	 */
+	public int[] frame(int i) throws IOException {
+		if (i < 0 || i >= count) throw new IndexOutOfBoundsException("frame " + i + " of " + count);
+		if (i == current) return pixels;
+		int from = i;
+		while (!keyframes[from] && from != current + 1) from--;	// the keyframe before, or just after the current frame
+		current = -1;					// until it's done, in case a frame can't be read
+		for (int f = from; f <= i; f++) apply(f);
+		current = i;
+		return pixels;
+	}
+
+	/**
+	 * Rebuilds the i-th recorded frame as a new image.
+	 */
+	public BufferedImage image(int i) throws IOException {
+		int[] rgb = frame(i);
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		System.arraycopy(rgb, 0, ((DataBufferInt) image.getRaster().getDataBuffer()).getData(), 0, rgb.length);
+		return image;
+	}
+
+	/**
+	 * Reads frame f's encoding and applies it to pixels.
+	 */
+	private void apply(int f) throws IOException {
+		if (packed.length < packedLengths[f]) packed = new byte[packedLengths[f]];
+		if (encoded.length < lengths[f]) encoded = new byte[lengths[f]];
+		file.seek(offsets[f]);
+		file.readFully(packed, 0, packedLengths[f]);
+		inflater.reset();
+		inflater.setInput(packed, 0, packedLengths[f]);
+		try {
+			int got = 0;
+			while (got < lengths[f] && !inflater.finished()) {
+				int n = inflater.inflate(encoded, got, lengths[f] - got);
+				if (n == 0 && inflater.needsInput()) break;
+				got += n;
+			}
+			if (got != lengths[f]) throw new IOException("frame " + frames[f] + " is cut short");
+		}
+		catch (DataFormatException e) {
+			throw new IOException("frame " + frames[f] + " is corrupt", e);
+		}
+		int at = 0;
+		if (keyframes[f]) {
+			for (int p = 0; p < pixels.length; p++, at += 4) pixels[p] = getInt(at);
+		}
+		else {
+			int runs = getInt(0), p = 0;
+			at = 4;
+			for (int r = 0; r < runs; r++) {
+				int skip = 0, run = 0;
+				for (int shift = 0; ; shift += 7) {
+					byte b = encoded[at++];
+					skip |= (b & 0x7f) << shift;
+					if (b >= 0) break;
+				}
+				for (int shift = 0; ; shift += 7) {
+					byte b = encoded[at++];
+					run |= (b & 0x7f) << shift;
+					if (b >= 0) break;
+				}
+				p += skip;
+				for (int end = p + run; p < end; p++, at += 4) pixels[p] = getInt(at);
+			}
+		}
+	}
+
+	private int getInt(int at) {
+		return (encoded[at] & 0xff) << 24 | (encoded[at + 1] & 0xff) << 16 | (encoded[at + 2] & 0xff) << 8
+				| (encoded[at + 3] & 0xff);
+	}
+
+	public void close() throws IOException {
+		inflater.end();
+		file.close();
+	}
+
+	public static void main(String[] args) throws Exception {
+		if (args.length < 1) {
+			System.err.println("usage: java PaintReplay recording [frame|all [output]]");
+			System.exit(1);
+		}
+		PaintReplay replay = new PaintReplay(new File(args[0]));
+		try {
+			if (args.length == 1) {
+				int keyframes = 0;
+				for (int i = 0; i < replay.size(); i++) if (replay.isKeyframe(i)) keyframes++;
+				System.out.printf("%dx%d, %d frames recorded (%d keyframes)", replay.getWidth(), replay.getHeight(),
+						replay.size(), keyframes);
+				if (replay.size() > 0) {
+					long last = replay.frameNumber(replay.size() - 1);
+					System.out.printf(", frames 0 to %d (%d dropped), %.1f s", last, last + 1 - replay.size(),
+							replay.time(replay.size() - 1) / 1e9);
+				}
+				System.out.println();
+			}
+			else if (args[1].equals("all")) {
+				File directory = new File(args.length > 2 ? args[2] : ".");
+				for (int i = 0; i < replay.size(); i++) {
+					File output = new File(directory, String.format("frame%06d.png", replay.frameNumber(i)));
+					ImageIO.write(replay.image(i), "png", output);
+				}
+			}
+			else {
+				long frame = Long.parseLong(args[1]);
+				int i = replay.indexOf(frame);
+				if (i < 0) {
+					System.err.println("Nothing recorded by frame " + frame);
+					System.exit(1);
+				}
+				File output = new File(args.length > 2 ? args[2] : String.format("frame%06d.png", frame));
+				ImageIO.write(replay.image(i), "png", output);
+			}
+		}
+		finally {
+			replay.close();
+		}
+	}
+}
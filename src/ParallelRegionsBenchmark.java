@@ -0,0 +1,48 @@
+import java.awt.image.BufferedImage;
+
+/**
+ * Measures how the parallel labeling engine scales with threads, on synthetic 720p and 1080p frames.
+ * Runs headless: java ParallelRegionsBenchmark [seconds per measurement]
+ */
+public class ParallelRegionsBenchmark {
+	private static final int[][] sizes = { { 1280, 720 }, { 1920, 1080 } };
+	private static final int[] threads = { 1, 2, 4, 8 };
+
+	public static void main(String[] args) {
+		double seconds = args.length > 0 ? Double.parseDouble(args[0]) : 2;
+		System.out.println("cores available: " + Runtime.getRuntime().availableProcessors());
+		for (int[] size : sizes) {
+			for (SyntheticFrames.Scene scene : SyntheticFrames.Scene.values()) {
+				BufferedImage frame = SyntheticFrames.frame(scene, size[0], size[1], 1);
+				RegionFinder finder = new RegionFinder(frame);
+				finder.setEngine(RegionFinder.Engine.LABELING);
+				double serial = framesPerSecond(finder, seconds);
+				int serialRegions = finder.getRegions().size();
+				System.out.printf("%dx%d %-11s serial labeling %8.1f frames/s%n", size[0], size[1], scene, serial);
+
+				finder.setEngine(RegionFinder.Engine.PARALLEL_LABELING);
+				for (int t : threads) {
+					finder.setParallelism(t);
+					double fps = framesPerSecond(finder, seconds);
+					if (finder.getRegions().size() != serialRegions) {
+						throw new IllegalStateException("parallel labeling found " + finder.getRegions().size()
+								+ " regions, serial found " + serialRegions);
+					}
+					System.out.printf("%dx%d %-11s %2d threads     %8.1f frames/s  x%.2f%n", size[0], size[1], scene, t, fps, fps / serial);
+				}
+			}
+		}
+		System.exit(0);
+	}
+
+	/**
+	 * Frames per second finding regions with the finder's current settings.
+	 */
+	private static double framesPerSecond(final RegionFinder finder, double seconds) {
+		return RegionsBenchmark.measure(new RegionsBenchmark.Operation() {
+			public void run() {
+				finder.findRegions(SyntheticFrames.TARGET);
+			}
+		}, seconds).opsPerSecond;
+	}
+}
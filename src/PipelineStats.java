@@ -0,0 +1,209 @@
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * How fast frames are getting through: a latency histogram per stage, frames per second, frames dropped,
+ * and bytes allocated per frame by the pipeline's threads.
+ * The stages time themselves (see record), and everything can be read from any thread, through JMX too.
+ */
+public class PipelineStats implements PipelineStatsMBean {
+	/**
+	 * The timed stages. CONVERT is the whole of turning a grabbed frame into an image, so includes RESIZE,
+	 * which sources that flip or shrink frames also time on its own.
+	 */
+	public enum Stage {
+		GRAB("grab"), RESIZE("flip/resize"), CONVERT("convert"), FIND_REGIONS("findRegions"), RECOLOR("recolor"),
+		PAINT("paint");
+
+		private final String label;
+
+		Stage(String label) {
+			this.label = label;
+		}
+
+		public String toString() {
+			return label;
+		}
+	}
+
+	private static final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+	private static final boolean countAllocation = allocationCounting();
+
+	private final LatencyHistogram[] stages = new LatencyHistogram[Stage.values().length];
+	private final AtomicLong frames = new AtomicLong();		// frames all the way through
+	private final AtomicLong dropped = new AtomicLong();	// frames replaced by newer ones before being processed
+	private final AtomicLong allocated = new AtomicLong();	// bytes allocated by the stages, over all the frames
+	private volatile double framesPerSecond;
+	private volatile long firstFrame;					// when the first frame was done, for the rate before a window has passed
+	private long windowStart, windowFrames;				// frames done since windowStart, for the rate
+	private final List<ObjectName> registered = new ArrayList<ObjectName>();
+
+	public PipelineStats() {
+		for (int s = 0; s < stages.length; s++) stages[s] = new LatencyHistogram();
+	}
+
+	private static boolean allocationCounting() {
+		try {
+			if (threads instanceof com.sun.management.ThreadMXBean) {
+				com.sun.management.ThreadMXBean sun = (com.sun.management.ThreadMXBean) threads;
+				if (sun.isThreadAllocatedMemorySupported()) {
+					if (!sun.isThreadAllocatedMemoryEnabled()) sun.setThreadAllocatedMemoryEnabled(true);
+					return true;
+				}
+			}
+		}
+		catch (LinkageError | UnsupportedOperationException | SecurityException e) {
+			// not a HotSpot JVM, or not allowed
+		}
+		return false;
+	}
+
+	/**
+	 * Bytes allocated so far by the calling thread, or 0 if the JVM doesn't say; the difference between two calls
+	 * is what the thread allocated in between.
+	 */
+	public static long allocatedBytes() {
+		if (!countAllocation) return 0;
+		return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	public LatencyHistogram latency(Stage stage) {
+		return stages[stage.ordinal()];
+	}
+
+	/**
+	 * Records a stage that started at the given System.nanoTime(), and returns the time now,
+	 * so one stage's end can start the next.
+	 */
+	public long record(Stage stage, long start) {
+		long now = System.nanoTime();
+		stages[stage.ordinal()].record(now - start);
+		return now;
+	}
+
+	/**
+	 * Adds to the bytes allocated for frames.
+	 */
+	public void allocated(long bytes) {
+		if (bytes > 0) allocated.addAndGet(bytes);
+	}
+
+	public void dropped() {
+		dropped.incrementAndGet();
+	}
+
+	/**
+	 * Counts a frame finished, updating the rate about once a second. Only called by one thread.
+	 */
+	public void frameDone() {
+		long now = System.nanoTime(), n = frames.incrementAndGet();
+		if (windowStart == 0 || n < windowFrames) {	// first frame, or since a reset
+			firstFrame = now;
+			framesPerSecond = 0;
+			windowStart = now;
+			windowFrames = n;
+		}
+		else if (now - windowStart >= 1000000000L) {
+			framesPerSecond = (n - windowFrames) * 1e9 / (now - windowStart);
+			windowStart = now;
+			windowFrames = n;
+		}
+	}
+
+	public long getFrames() {
+		return frames.get();
+	}
+
+	/**
+	 * Frames done per second over the last second or so (or since the first frame, until a second has passed).
+	 */
+	public double getFramesPerSecond() {
+		double rate = framesPerSecond;
+		if (rate == 0 && frames.get() > 1) rate = (frames.get() - 1) * 1e9 / Math.max(1, System.nanoTime() - firstFrame);
+		return rate;
+	}
+
+	public long getDroppedFrames() {
+		return dropped.get();
+	}
+
+	public long getAllocatedBytesPerFrame() {
+		long n = frames.get();
+		return n > 0 ? allocated.get() / n : 0;
+	}
+
+	/**
+	 * Starts everything over.
+	 */
+	public void reset() {
+		for (LatencyHistogram stage : stages) stage.reset();
+		frames.set(0);
+		dropped.set(0);
+		allocated.set(0);
+	}
+
+	/**
+	 * A line for the frame rate and one for each stage that's been timed, e.g. for an overlay or a log.
+	 */
+	public List<String> summary() {
+		List<String> lines = new ArrayList<String>();
+		lines.add(String.format(Locale.ROOT, "%.1f fps, %d frames, %d dropped, %d KB allocated/frame",
+				getFramesPerSecond(), frames.get(), dropped.get(), getAllocatedBytesPerFrame() / 1024));
+		for (Stage stage : Stage.values()) {
+			LatencyHistogram latency = latency(stage);
+			if (latency.getCount() == 0) continue;
+			lines.add(String.format(Locale.ROOT, "%-12s mean %6.2f  p50 %6.2f  p99 %6.2f  max %6.2f ms", stage,
+					latency.getMeanMillis(), latency.getMedianMillis(), latency.getP99Millis(), latency.getMaxMillis()));
+		}
+		return lines;
+	}
+
+	/**
+	 * Makes these stats, and each stage's latency, visible through the platform MBean server (e.g. to jconsole),
+	 * under ColorTracking:type=PipelineStats,name=name and ColorTracking:type=StageLatency,pipeline=name,stage=...
+	 * A failure is reported but otherwise ignored: the stats still work without JMX.
+	 */
+	public synchronized void register(String name) {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			String quoted = ObjectName.quote(name);
+			register(server, new ObjectName("ColorTracking:type=PipelineStats,name=" + quoted), this);
+			for (Stage stage : Stage.values()) {
+				register(server, new ObjectName("ColorTracking:type=StageLatency,pipeline=" + quoted
+						+ ",stage=" + stage.name()), latency(stage));
+			}
+		}
+		catch (JMException e) {
+			System.err.println("Couldn't register pipeline stats with JMX: " + e);
+		}
+	}
+
+	private void register(MBeanServer server, ObjectName name, Object bean) throws JMException {
+		if (server.isRegistered(name)) server.unregisterMBean(name);
+		server.registerMBean(bean, name);
+		registered.add(name);
+	}
+
+	/**
+	 * Removes what register added.
+	 */
+	public synchronized void unregister() {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		for (ObjectName name : registered) {
+			try {
+				if (server.isRegistered(name)) server.unregisterMBean(name);
+			}
+			catch (JMException e) {
+				// already gone
+			}
+		}
+		registered.clear();
+	}
+}
@@ -0,0 +1,14 @@
+/**
+ * What JMX shows of a PipelineStats; each stage's latency is its own LatencyHistogramMBean.
+ */
+public interface PipelineStatsMBean {
+	long getFrames();
+
+	double getFramesPerSecond();
+
+	long getDroppedFrames();
+
+	long getAllocatedBytesPerFrame();
+
+	void reset();
+}
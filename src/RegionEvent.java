@@ -0,0 +1,112 @@
+import java.util.Arrays;
+
+/**
+ * What was found in one frame: when, and for each region its area, centroid, bounding box, and velocity
+ * (from the nearest region in the frame before, in pixels per second).
+ * Events are reused by the RegionEventStream, so a listener must copy out what it keeps.
+ */
+public class RegionEvent {
+	private long frame;							// frame number
+	private long time;							// System.nanoTime() when the frame was published
+	private int count;							// number of regions
+	private int[] areas = new int[0];
+	private float[] centroidXs = new float[0], centroidYs = new float[0];
+	private int[] minXs = new int[0], minYs = new int[0], maxXs = new int[0], maxYs = new int[0];
+	private float[] velocityXs = new float[0], velocityYs = new float[0];
+
+	/**
+	 * Sets the frame and time, and makes room for count regions.
+	 */
+	void start(long frame, long time, int count) {
+		this.frame = frame;
+		this.time = time;
+		this.count = count;
+		if (areas.length < count) {
+			int grown = Math.max(count, areas.length * 2);
+			areas = Arrays.copyOf(areas, grown);
+			centroidXs = Arrays.copyOf(centroidXs, grown);
+			centroidYs = Arrays.copyOf(centroidYs, grown);
+			minXs = Arrays.copyOf(minXs, grown);
+			minYs = Arrays.copyOf(minYs, grown);
+			maxXs = Arrays.copyOf(maxXs, grown);
+			maxYs = Arrays.copyOf(maxYs, grown);
+			velocityXs = Arrays.copyOf(velocityXs, grown);
+			velocityYs = Arrays.copyOf(velocityYs, grown);
+		}
+	}
+
+	void set(int i, int area, float centroidX, float centroidY, int minX, int minY, int maxX, int maxY,
+			float velocityX, float velocityY) {
+		areas[i] = area;
+		centroidXs[i] = centroidX;
+		centroidYs[i] = centroidY;
+		minXs[i] = minX;
+		minYs[i] = minY;
+		maxXs[i] = maxX;
+		maxYs[i] = maxY;
+		velocityXs[i] = velocityX;
+		velocityYs[i] = velocityY;
+	}
+
+	public long getFrame() {
+		return frame;
+	}
+
+	public long getTime() {
+		return time;
+	}
+
+	/**
+	 * Number of regions.
+	 */
+	public int size() {
+		return count;
+	}
+
+	public int area(int i) {
+		return areas[i];
+	}
+
+	public float centroidX(int i) {
+		return centroidXs[i];
+	}
+
+	public float centroidY(int i) {
+		return centroidYs[i];
+	}
+
+	public int minX(int i) {
+		return minXs[i];
+	}
+
+	public int minY(int i) {
+		return minYs[i];
+	}
+
+	public int maxX(int i) {
+		return maxXs[i];
+	}
+
+	public int maxY(int i) {
+		return maxYs[i];
+	}
+
+	public float velocityX(int i) {
+		return velocityXs[i];
+	}
+
+	public float velocityY(int i) {
+		return velocityYs[i];
+	}
+
+	/**
+	 * Index of the first region with the largest area, or -1 if there are none.
+	 */
+	public int largest() {
+		int largest = -1;
+		for (int i = 0; i < count; i++) {
+			if (largest < 0 || areas[i] > areas[largest]) largest = i;
+		}
+		return largest;
+	}
+}
@@ -0,0 +1,10 @@
+/**
+ * Receives batches of region events from a RegionEventStream, on the stream's delivery thread.
+ */
+public interface RegionEventListener {
+	/**
+	 * Handles events[0..count), oldest first. The events are reused once this returns.
+	 * Throwing unsubscribes the listener.
+	 */
+	void regionEvents(RegionEvent[] events, int count) throws Exception;
+}
@@ -0,0 +1,65 @@
+import java.io.*;
+import java.util.Locale;
+
+/**
+ * Writes region events to a file, as CSV text (one line per region) or compact binary, on the stream's
+ * delivery thread, so the tracking never waits for the disk.
+ * Binary events are: frame (long), time (long, nanoseconds), region count (int), then per region:
+ * area (int), centroid x and y (float), bounding box min x, min y, max x, max y (int), velocity x and y (float),
+ * all big-endian, as DataOutputStream writes them.
+ */
+public class RegionEventSink implements RegionEventListener, Closeable {
+	private final PrintWriter csv;						// one of these is null
+	private final DataOutputStream binary;
+
+	/**
+	 * A sink writing to the file, in binary if its name ends in .bin, else in CSV.
+	 */
+	public RegionEventSink(File file) throws IOException {
+		OutputStream out = new BufferedOutputStream(new FileOutputStream(file), 1 << 16);
+		if (file.getName().endsWith(".bin")) {
+			binary = new DataOutputStream(out);
+			csv = null;
+		}
+		else {
+			binary = null;
+			csv = new PrintWriter(new OutputStreamWriter(out, "UTF-8"));
+			csv.println("frame,time,region,area,centroidX,centroidY,minX,minY,maxX,maxY,velocityX,velocityY");
+		}
+	}
+
+	public void regionEvents(RegionEvent[] events, int count) throws IOException {
+		for (int e = 0; e < count; e++) {
+			RegionEvent event = events[e];
+			if (binary != null) {
+				binary.writeLong(event.getFrame());
+				binary.writeLong(event.getTime());
+				binary.writeInt(event.size());
+			}
+			for (int i = 0; i < event.size(); i++) {
+				if (binary != null) {
+					binary.writeInt(event.area(i));
+					binary.writeFloat(event.centroidX(i));
+					binary.writeFloat(event.centroidY(i));
+					binary.writeInt(event.minX(i));
+					binary.writeInt(event.minY(i));
+					binary.writeInt(event.maxX(i));
+					binary.writeInt(event.maxY(i));
+					binary.writeFloat(event.velocityX(i));
+					binary.writeFloat(event.velocityY(i));
+				}
+				else {
+					csv.printf(Locale.ROOT, "%d,%d,%d,%d,%.2f,%.2f,%d,%d,%d,%d,%.1f,%.1f%n", event.getFrame(), event.getTime(), i,
+							event.area(i), event.centroidX(i), event.centroidY(i), event.minX(i), event.minY(i),
+							event.maxX(i), event.maxY(i), event.velocityX(i), event.velocityY(i));
+				}
+			}
+		}
+		if (csv != null && csv.checkError()) throw new IOException("can't write region events");
+	}
+
+	public void close() throws IOException {
+		if (binary != null) binary.close();
+		else csv.close();
+	}
+}
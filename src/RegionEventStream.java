@@ -0,0 +1,182 @@
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Streams what tracking finds to listeners, without holding up the thread that finds it.
+ * publish() (from one thread, normally the one processing frames) turns the regions into a RegionEvent in a
+ * fixed ring of reused events, and never waits: when the ring is full, the event is dropped and counted.
+ * A delivery thread hands the events waiting in the ring to every listener in batches.
+ */
+public class RegionEventStream {
+	private final RegionEvent[] ring;					// reused events; slot i%length
+	private final RegionEvent[] batch;					// the events being delivered, in order
+	private final AtomicLong published = new AtomicLong();	// events written so far
+	private final AtomicLong delivered = new AtomicLong();	// events handed to listeners so far
+	private final AtomicLong dropped = new AtomicLong();	// events not published because the ring was full
+	private final CopyOnWriteArrayList<RegionEventListener> listeners = new CopyOnWriteArrayList<RegionEventListener>();
+	private volatile Thread deliverer;					// the delivery thread, started by the first subscribe
+	private volatile boolean waiting;					// whether the delivery thread is parked for want of events
+	private volatile boolean closed;
+
+	private long frame;									// number of the next frame published
+	private long lastTime;								// when the last frame was published
+	private float[] lastXs = new float[0], lastYs = new float[0];	// the last frame's centroids, for velocities
+	private int lastCount;
+
+	/**
+	 * A stream holding up to capacity events not yet delivered (rounded up to a power of two).
+	 */
+	public RegionEventStream(int capacity) {
+		int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+		ring = new RegionEvent[size];
+		for (int i = 0; i < size; i++) ring[i] = new RegionEvent();
+		batch = new RegionEvent[size];
+	}
+
+	public RegionEventStream() {
+		this(256);
+	}
+
+	/**
+	 * Adds a listener, starting delivery if it hasn't started yet.
+	 */
+	public synchronized void subscribe(RegionEventListener listener) {
+		listeners.add(listener);
+		if (deliverer == null && !closed) {
+			Thread t = new Thread(new Runnable() {
+				public void run() {
+					deliverLoop();
+				}
+			}, "region events");
+			t.setDaemon(true);
+			deliverer = t;
+			t.start();
+		}
+	}
+
+	public void unsubscribe(RegionEventListener listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Whether anyone is listening (so callers can skip publishing).
+	 */
+	public boolean hasListeners() {
+		return !listeners.isEmpty();
+	}
+
+	/**
+	 * Events dropped so far because the listeners weren't keeping up.
+	 */
+	public long getDropped() {
+		return dropped.get();
+	}
+
+	/**
+	 * Publishes a frame's regions as the next event; returns false if it had to be dropped.
+	 * Velocities are from each region's centroid to the nearest centroid in the last published frame.
+	 * Only one thread may publish.
+	 */
+	public boolean publish(RegionSet regions) {
+		long now = System.nanoTime();
+		long slot = published.get();
+		boolean room = slot - delivered.get() < ring.length;
+		if (room) {
+			RegionEvent event = ring[(int) (slot & (ring.length - 1))];
+			event.start(frame, now, regions.size());
+			double seconds = (now - lastTime) / 1e9;
+			for (int r = 0; r < regions.size(); r++) {
+				float x = (float) regions.centroidX(r), y = (float) regions.centroidY(r);
+				float vx = 0, vy = 0;
+				int nearest = nearest(x, y);
+				if (nearest >= 0 && seconds > 0) {
+					vx = (float) ((x - lastXs[nearest]) / seconds);
+					vy = (float) ((y - lastYs[nearest]) / seconds);
+				}
+				event.set(r, regions.regionSize(r), x, y, regions.minX(r), regions.minY(r), regions.maxX(r), regions.maxY(r),
+						vx, vy);
+			}
+			published.set(slot + 1);
+			if (waiting) LockSupport.unpark(deliverer);
+		}
+		else {
+			dropped.incrementAndGet();
+		}
+		remember(regions, now);
+		frame++;
+		return room;
+	}
+
+	/**
+	 * Index of the last frame's centroid nearest (x,y), or -1 if it had no regions.
+	 */
+	private int nearest(float x, float y) {
+		int nearest = -1;
+		float best = Float.MAX_VALUE;
+		for (int i = 0; i < lastCount; i++) {
+			float dx = x - lastXs[i], dy = y - lastYs[i], d = dx * dx + dy * dy;
+			if (d < best) {
+				best = d;
+				nearest = i;
+			}
+		}
+		return nearest;
+	}
+
+	private void remember(RegionSet regions, long now) {
+		lastCount = regions.size();
+		if (lastXs.length < lastCount) {
+			lastXs = new float[Math.max(lastCount, lastXs.length * 2)];
+			lastYs = new float[lastXs.length];
+		}
+		for (int r = 0; r < lastCount; r++) {
+			lastXs[r] = (float) regions.centroidX(r);
+			lastYs[r] = (float) regions.centroidY(r);
+		}
+		lastTime = now;
+	}
+
+	/**
+	 * Delivers what's left, then stops the delivery thread and waits for it.
+	 */
+	public void close() throws InterruptedException {
+		Thread t;
+		synchronized (this) {
+			closed = true;
+			t = deliverer;
+		}
+		if (t != null) {
+			LockSupport.unpark(t);
+			t.join();
+		}
+	}
+
+	private void deliverLoop() {
+		while (true) {
+			long from = delivered.get(), to = published.get();
+			if (from == to) {
+				if (closed) return;
+				waiting = true;
+				if (published.get() == from && !closed) LockSupport.parkNanos(this, 10000000L);	// re-checked after flagging
+				waiting = false;
+				continue;
+			}
+			int count = 0;
+			for (long i = from; i < to; i++) {
+				batch[count++] = ring[(int) (i & (ring.length - 1))];
+			}
+			for (RegionEventListener listener : listeners) {
+				try {
+					listener.regionEvents(batch, count);
+				}
+				catch (Exception e) {
+					System.err.println("Region event listener failed, unsubscribing it");
+					e.printStackTrace();
+					listeners.remove(listener);
+				}
+			}
+			delivered.lazySet(to);		// the slots can be reused now
+		}
+	}
+}
@@ -1,6 +1,14 @@
 import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.PixelInterleavedSampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * Region growing algorithm: finds and holds regions in an image.
@@ -13,14 +21,81 @@ import java.util.ArrayList;
  * @author Will Hodgson
  */
 public class RegionFinder {
-	private static final int maxColorDiff = 27;                // how similar a pixel color must be to the target color, to belong to a region
-	private static final int minRegion = 50;                // how many points in a region to be worth considering
+	static final int defaultColorDiff = 27;                 // the usual maxColorDiff
+	static final int defaultMinRegion = 50;                 // the usual minRegion
+	private int maxColorDiff = defaultColorDiff;            // how similar a pixel color must be to the target color, to belong to a region
+	private int minRegion = defaultMinRegion;               // how many points in a region to be worth considering
+	private ColorMetric metric = ColorMetric.RGB_BOX;       // what "similar" means
 
 	private BufferedImage image;                            // the image in which to find regions
 	private BufferedImage recoloredImage;                   // the image with identified regions recolored
 
-	private ArrayList<ArrayList<Point>> regions;            // a region is a list of points
-	// so the identified regions are in a list of lists of points
+	private RegionSet regions = new RegionSet();            // the identified regions, packed
+	private int[] rgbBuffer = new int[0];                   // reused pixel buffer for images that aren't int-backed
+	private long[] mask = new long[0];                      // reused bitset of pixels matching the target color
+	private long[] tested = new long[0];                    // which pixels the mask has been built for (tracking tests few)
+	private int[] maskPixels;                               // the pixels the mask is built from
+	private int maskRed, maskGreen, maskBlue;               // and, with RGB_BOX, the target channels they're compared to
+	private MaskBuilder maskBuilder = MaskBuilder.best();   // builds RGB_BOX masks, with SIMD if it's available
+	private long[] visited = new long[0];                   // reused bitset of pixels already added to a region
+	private int[] labels = new int[0];                      // reused per-pixel labels, for the labeling engine
+	private int[] parent = new int[0];                      // reused union-find table over labels
+
+	/**
+	 * How findRegions finds regions: a flood fill from each seed pixel,
+	 * a raster-order connected-component labeling over the whole image,
+	 * or the same labeling done in horizontal strips across several threads.
+	 */
+	public enum Engine { FLOOD_FILL, LABELING, PARALLEL_LABELING }
+
+	private Engine engine = Engine.FLOOD_FILL;
+	private int parallelism = Runtime.getRuntime().availableProcessors();	// threads for PARALLEL_LABELING
+	private ForkJoinPool pool;								// created on first parallel use
+
+	private static final int fullScanInterval = 30;		// when tracking, scan the whole frame at least this often anyway
+	private boolean tracking = false;						// whether to search near the last largest region first
+	private int lastTarget, lastWidth, lastHeight;		// what the last largest region was found for
+	private int lastSize;									// size of the last largest region, 0 if there wasn't one
+	private int lastMinX, lastMinY, lastMaxX, lastMaxY;	// its bounding box
+	private int lastCentroidX, lastCentroidY;				// and centroid
+	private int framesSinceFullScan;
+	private int detectionStep = 1;							// look at every step-th pixel first, then refine (1: don't)
+	private RegionFinder coarse;							// finds regions in the subsampled frame
+	private BufferedImage coarseImage;						// every detectionStep-th pixel of the image, across and down
+	private boolean incremental = false;					// whether to redo only what changed since the last frame
+	private static final int tileSize = 16;				// incremental mode compares frames in tiles this big
+	private int[] previousPixels = new int[0];			// the last frame's pixels, to compare tiles against
+	private boolean previousValid;							// whether previousPixels, mask and regions go together
+	private ColorTarget previousTarget;					// and what they were found with
+	private ColorMetric previousMetric;
+	private Engine previousEngine;
+	private int previousMinRegion, previousWidth, previousHeight;
+	private boolean[] changedTiles = new boolean[0];		// tiles whose matches changed this frame
+	private boolean[] affectedTiles = new boolean[0];		// and those next to them, where regions must be found again
+	private RegionSet freshRegions = new RegionSet();		// regions found again this frame, in incremental mode
+	private RegionSet spareRegions = new RegionSet();		// where the kept and fresh regions are merged
+	private boolean[] kept = new boolean[0];				// which of last frame's regions stand, in incremental mode
+	private long[] freshOrder = new long[0];				// fresh regions' first points and indices, to sort them by
+	private double skippedTiles;							// fraction of tiles unchanged in the last incremental frame
+	private BackgroundModel background;					// if set, only its foreground is searched
+	private long[] foreground;								// this frame's foreground bits, or null to search everywhere
+	private boolean foregroundCurrent;						// whether foreground is for the image set
+	private long[] coarseForeground = new long[0];			// foreground subsampled for the coarse finder
+	private int pyramidStep = 1;							// find candidates in every step-th pixel, then refine them all (1: don't)
+	private long trackAttempts, trackHits;				// tracking searches tried, and how many didn't need a full scan
+
+	private ArrayList<ColorTarget> tableTargets;			// the targets the match tables were built for
+	private ColorMetric tableMetric;						// and the metric
+	private final ArrayList<ColorTarget> singleTarget = new ArrayList<ColorTarget>();	// findRegions(Color)'s target
+	private final int[] redTargets = new int[256];		// RGB_BOX: bit t set where a red value is close enough to target t's
+	private final int[] greenTargets = new int[256];
+	private final int[] blueTargets = new int[256];
+	private int[] cellTargets;							// other metrics: bit t set where a color cell is close enough to target t
+	private static final int cellBits = 6;				// color cells are 4*4*4 colors (the top 6 bits of each channel)
+	private final ArrayList<long[]> targetMasks = new ArrayList<long[]>();		// reused match mask per target
+	private final ArrayList<RegionSet> targetRegions = new ArrayList<RegionSet>();	// reused regions per target
+	private long[][] masks = new long[0][];				// the targets' masks for the current call
+	private final long[] targetBits = new long[32];		// one word of each target's mask, as it's classified
 
 	public RegionFinder() {
 		this.image = null;
@@ -30,129 +105,1261 @@ public class RegionFinder {
 		this.image = image;
 	}
 
+	/**
+	 * Sets the image to work on; call again whenever its pixels change, even if it's the same image.
+	 */
 	public void setImage(BufferedImage image) {
 		this.image = image;
+		framePixels = null;
+		foregroundCurrent = false;
 	}
 
 	public BufferedImage getImage() {
 		return image;
 	}
 
+	/**
+	 * The result of the last recolorImage, which the next one reuses (copy it to keep it).
+	 */
 	public BufferedImage getRecoloredImage() {
 		return recoloredImage;
 	}
-	private ArrayList<ArrayList<Point>> largestCollection;
 
 	/**
-	 * Tests whether the two colors are "similar enough," i.e. the absolute value of the distance between each color
-	 * channel is less than the threshold.
+	 * The layer 'p' mode paints the largest regions into: ARGB per pixel of the image, row after row, 0 where nothing's
+	 * been painted. Live, so the next recolorImage changes it (and empty until the first).
+	 */
+	public int[] getPaintLayer() {
+		return paintLayer;
+	}
+
+	public void setEngine(Engine engine) {
+		this.engine = engine;
+	}
+
+	public Engine getEngine() {
+		return engine;
+	}
+
+	/**
+	 * Sets how many threads the PARALLEL_LABELING engine uses.
+	 */
+	public void setParallelism(int parallelism) {
+		if (parallelism < 1) throw new IllegalArgumentException("parallelism must be at least 1");
+		if (pool != null && parallelism != this.parallelism) {
+			pool.shutdown();
+			pool = null;
+		}
+		this.parallelism = parallelism;
+	}
+
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	/**
+	 * Turns tracking on or off: when on, findRegions first searches around the last largest region,
+	 * and only scans the whole frame when that doesn't clearly find it again (or every so often regardless).
+	 * While a tracking search succeeds, the regions found are only those near the target.
+	 */
+	public void setTracking(boolean tracking) {
+		this.tracking = tracking;
+		lastSize = 0;
+	}
+
+	public boolean isTracking() {
+		return tracking;
+	}
+
+	/**
+	 * Sets how coarsely findRegions(Color) first looks for the target: with step s > 1, it looks at only every s-th
+	 * pixel across and down, then finds the regions at full resolution just around the largest one found that way
+	 * (flooding out from there, so that region comes out exact).
+	 * Much less work on big frames, but regions away from that one are missed, one thinner than s pixels may not be
+	 * seen at all, and of several about the same size, the coarse look may pick a different one as the largest.
+	 * A largest region spanning most of the frame is just found with a full scan, which is quicker then.
+	 * When tracking, this stands in for the full scan.
+	 */
+	public void setDetectionStep(int step) {
+		if (step < 1) throw new IllegalArgumentException("detection step must be at least 1");
+		detectionStep = step;
+	}
+
+	public int getDetectionStep() {
+		return detectionStep;
+	}
+
+	/**
+	 * Turns incremental mode on or off: when on, a full scan compares the frame with the last one in 16*16 tiles,
+	 * and only tests the pixels of tiles that changed; then, where the matches changed, it finds again only the
+	 * regions reaching into those tiles or the tiles next to them, keeping the rest from last time. The regions
+	 * come out exactly as a full scan finds them. It pays off when most of the picture holds still, as with a webcam
+	 * on a stand; the regions are only reused with the flood fill engine (others find them all again).
+	 * Tracking, the pyramid and the detection step take precedence.
+	 */
+	public void setIncremental(boolean incremental) {
+		this.incremental = incremental;
+		previousValid = false;
+	}
+
+	public boolean isIncremental() {
+		return incremental;
+	}
+
+	/**
+	 * The fraction of tiles that were the same as in the frame before, in the last incremental frame.
+	 */
+	public double getSkippedTileFraction() {
+		return skippedTiles;
+	}
+
+	/**
+	 * Sets a background model to search only the moving foreground: each frame, the model is updated with the image,
+	 * and only pixels it calls foreground can match (so only they are tested, while tracking, and flooded).
+	 * Incremental mode finds everything again each frame with a model, as the foreground moves; null turns it off.
+	 */
+	public void setBackgroundModel(BackgroundModel background) {
+		this.background = background;
+		foreground = null;
+		foregroundCurrent = false;
+		previousValid = false;
+	}
+
+	public BackgroundModel getBackgroundModel() {
+		return background;
+	}
+
+	/**
+	 * Updates the background model with the image, once per image.
+	 */
+	private void updateForeground() {
+		if (background != null && !foregroundCurrent) {
+			foreground = background.update(pixels(), image.getWidth(), image.getHeight());
+			foregroundCurrent = true;
+		}
+	}
+
+	/**
+	 * Sets the pyramid step: with step s > 1, findRegions(Color) first finds candidate regions in a frame of every
+	 * s-th pixel across and down, throws away those with fewer than minRegion/(s*s) points (about what a region of
+	 * minRegion points has), and floods each of the rest out at full resolution, testing only the pixels it reaches.
+	 * Unlike setDetectionStep, every region is refined, not just the largest.
+	 * Each region found is exactly as a full scan finds it, but regions may come in a different order, and a region
+	 * can be missed if too few of its pixels fall on the coarse grid: one thinner than s pixels, or of not much more
+	 * than minRegion points (near the threshold, some are kept and some not; compact regions well over it are found).
+	 * Several times faster on big frames; where candidates cover more than a quarter of the frame, it just scans
+	 * the whole frame instead. Takes precedence over the detection step.
+	 */
+	public void setPyramidStep(int step) {
+		if (step < 1) throw new IllegalArgumentException("pyramid step must be at least 1");
+		pyramidStep = step;
+	}
+
+	public int getPyramidStep() {
+		return pyramidStep;
+	}
+
+	/**
+	 * Fraction of tracking searches that found the target without a full-frame scan.
+	 */
+	public double getTrackingHitRate() {
+		return trackAttempts == 0 ? 0 : (double) trackHits / trackAttempts;
+	}
+
+	private int[] paintLayer = new int[0];                  // 'p' mode painting, ARGB per pixel, 0 where nothing is painted yet
+	private int paintWidth, paintHeight;                    // size of the paint layer
+	private int paintMinX = Integer.MAX_VALUE, paintMinY = Integer.MAX_VALUE;	// bounding box of everything painted so far
+	private int paintMaxX = -1, paintMaxY = -1;
+	private int[] output;                                   // recoloredImage's pixels, written directly
+	private int[] framePixels;                              // the image's pixels as packed RGB, once read for this frame
+
+	/**
+	 * How recolorImage draws regions: filled in, just their outlines, or tinted with the paint color.
+	 */
+	public enum RenderStyle { FILL, OUTLINE, OVERLAY }
+
+	private RenderStyle renderStyle = RenderStyle.FILL;
+	private int overlayAlpha = 128;                         // how strongly OVERLAY tints, 0-255
+	private final RegionRuns largestRuns = new RegionRuns();	// the largest region as runs, for recoloring
+
+	/**
+	 * Tests whether a packed RGB pixel is "similar enough" to the single target: straight comparisons for RGB_BOX
+	 * (which bail out at the first channel that's off, faster than any table), otherwise the match table.
+	 */
+	private boolean colorMatch(int rgb) {
+		if (tableMetric == ColorMetric.RGB_BOX) {
+			return Math.abs(((rgb >> 16) & 0xff) - maskRed) < maxColorDiff
+					&& Math.abs(((rgb >> 8) & 0xff) - maskGreen) < maxColorDiff
+					&& Math.abs((rgb & 0xff) - maskBlue) < maxColorDiff;
+		}
+		return (matchingTargets(rgb) & 1) != 0;
+	}
+
+	/**
+	 * The bits of the targets the match tables were built for that a packed RGB pixel is similar enough to.
 	 */
-	private static boolean colorMatch(Color c1, Color c2) {
-		// Absolute value of distance between colors
-		return ((Math.abs(c1.getRed() - c2.getRed())) < maxColorDiff)
-				&& ((Math.abs(c1.getGreen() - c2.getGreen())) < maxColorDiff)
-				&& ((Math.abs(c1.getBlue() - c2.getBlue())) < maxColorDiff);
+	private int matchingTargets(int rgb) {
+		if (cellTargets == null || tableMetric == ColorMetric.RGB_BOX) {
+			return redTargets[(rgb >> 16) & 0xff] & greenTargets[(rgb >> 8) & 0xff] & blueTargets[rgb & 0xff];
+		}
+		return cellTargets[((rgb >> 6) & 0x3f000) | ((rgb >> 4) & 0xfc0) | ((rgb >> 2) & 0x3f)];
+	}
+
+	/**
+	 * Sets the tolerance for how close a pixel's color must be to the target color (by default, each channel must
+	 * be within 27 of the target's).
+	 */
+	public void setMaxColorDiff(int maxColorDiff) {
+		this.maxColorDiff = maxColorDiff;
+	}
+
+	public int getMaxColorDiff() {
+		return maxColorDiff;
+	}
+
+	/**
+	 * Sets how many points a region needs to be worth keeping (by default 50).
+	 */
+	public void setMinRegion(int minRegion) {
+		this.minRegion = minRegion;
+	}
+
+	public int getMinRegion() {
+		return minRegion;
+	}
+
+	/**
+	 * Sets how a pixel's color is compared to the target color.
+	 */
+	public void setColorMetric(ColorMetric metric) {
+		this.metric = metric;
+	}
+
+	public ColorMetric getColorMetric() {
+		return metric;
+	}
+
+	public void setRenderStyle(RenderStyle renderStyle) {
+		this.renderStyle = renderStyle;
+	}
+
+	public RenderStyle getRenderStyle() {
+		return renderStyle;
+	}
+
+	/**
+	 * Sets how strongly OVERLAY tints regions with the paint color, from 0 (not at all) to 255 (solid).
+	 */
+	public void setOverlayAlpha(int overlayAlpha) {
+		this.overlayAlpha = overlayAlpha;
+	}
+
+	public int getOverlayAlpha() {
+		return overlayAlpha;
+	}
+
+	/**
+	 * Sets what builds the match mask for a single target with RGB_BOX (MaskBuilder.scalar, or MaskBuilder.vector()).
+	 */
+	public void setMaskBuilder(MaskBuilder maskBuilder) {
+		this.maskBuilder = maskBuilder;
+	}
+
+	public MaskBuilder getMaskBuilder() {
+		return maskBuilder;
+	}
+
+	/**
+	 * Returns the image's pixels as packed RGB ints, one row after another, read once per setImage.
+	 * Int-backed images are read in place; anything else is unpacked into a reused buffer.
+	 */
+	private int[] pixels() {
+		if (framePixels == null) framePixels = readPixels();
+		return framePixels;
+	}
+
+	private int[] readPixels() {
+		int w = image.getWidth(), h = image.getHeight();
+		if ((image.getType() == BufferedImage.TYPE_INT_RGB || image.getType() == BufferedImage.TYPE_INT_ARGB)
+				&& image.getRaster().getDataBuffer() instanceof DataBufferInt
+				&& image.getRaster().getSampleModel() instanceof SinglePixelPackedSampleModel
+				&& ((SinglePixelPackedSampleModel) image.getRaster().getSampleModel()).getScanlineStride() == w
+				&& image.getRaster().getSampleModelTranslateX() == 0 && image.getRaster().getSampleModelTranslateY() == 0
+				&& image.getRaster().getDataBuffer().getOffset() == 0) {
+			return ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+		}
+		if (rgbBuffer.length < w * h) rgbBuffer = new int[w * h];
+		if (image.getType() == BufferedImage.TYPE_3BYTE_BGR
+				&& image.getRaster().getDataBuffer() instanceof DataBufferByte
+				&& image.getRaster().getSampleModel() instanceof PixelInterleavedSampleModel
+				&& ((PixelInterleavedSampleModel) image.getRaster().getSampleModel()).getScanlineStride() == w * 3
+				&& image.getRaster().getSampleModelTranslateX() == 0 && image.getRaster().getSampleModelTranslateY() == 0
+				&& image.getRaster().getDataBuffer().getOffset() == 0) {
+			// the usual layout for decoded JPEGs and camera frames: unpack the bytes directly, skipping the color model
+			byte[] bgr = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+			for (int p = 0, i = 0; p < w * h; p++, i += 3) {
+				rgbBuffer[p] = (bgr[i + 2] & 0xff) << 16 | (bgr[i + 1] & 0xff) << 8 | (bgr[i] & 0xff);
+			}
+			return rgbBuffer;
+		}
+		return image.getRGB(0, 0, w, h, rgbBuffer, 0, w);
 	}
 
 	/**
 	 * Sets regions to the flood-fill regions in the image, similar enough to the trackColor.
+	 * Pixels are looked up in a table of which colors match once, into a bitmask of matches that the engines
+	 * then work from; the table is only rebuilt when the color, tolerance or metric changes.
+	 * Either engine finds the same 8-connected regions in the same order; they differ only in
+	 * the order of the points within each region.
+	 * When tracking, most frames only search near where the largest region was last time
+	 * (and only test the pixels that search reaches).
 	 */
 	public void findRegions(Color targetColor) {
-		BufferedImage visited = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_ARGB);
-		// loop through each pixel in image to find one that matches targetColor and hasn't been visited
-		regions = new ArrayList<ArrayList<Point>>();
-		for (int y = 0; y < image.getHeight(); y++) {
-			for (int x = 0; x < image.getWidth(); x++) {
-				Color currColor = new Color(image.getRGB(x, y));
-				if (visited.getRGB(x, y) == 0 && colorMatch(currColor, targetColor)) {
-					ArrayList<Point> toVisit = new ArrayList<Point>();    // create a new list including that point
-					Point point = new Point(x, y);
-					toVisit.add(point);
-					ArrayList<Point> newRegion = new ArrayList<Point>(); // create a new list tracking the region
-
-					// flood fill
-					while (!toVisit.isEmpty()) {            // As long as there's some pixel that needs to be visited
-						Point curr = toVisit.remove(0);
-						;        // Get one to visit, removes from list
-						if (visited.getRGB((int) curr.getX(), (int) curr.getY()) == 0) {
-							visited.setRGB((int) curr.getX(), (int) curr.getY(), 1);    // Mark it as visited
-							newRegion.add(curr);                // Add it to the region
-							for (int i = Math.max((int) curr.getX() - 1, 0); i <= Math.min(curr.getX() + 1, image.getWidth() - 1); i++) {   // search for neighbors of targetColor
-								for (int j = Math.max((int) curr.getY() - 1, 0); j <= Math.min(curr.getY() + 1, image.getHeight() - 1); j++) {
-									Color neighborColor = new Color(image.getRGB(i, j));
-									if (colorMatch(neighborColor, targetColor) && visited.getRGB(i, j) != 1) {    // If the neighbor is of the correct color
-										toVisit.add(new Point(i, j));    // add it to the list of pixels to be visited
-
-									}
-								}
-
-							}
-						}
-					}
-					if (newRegion.size() >= minRegion) {    // If the region is big enough to be worth keeping, do so
-						regions.add(newRegion);
+		int w = image.getWidth(), h = image.getHeight(), n = w * h;
+		if (singleTarget.isEmpty() || singleTarget.get(0).getColor().getRGB() != targetColor.getRGB()
+				|| singleTarget.get(0).getTolerance() != maxColorDiff) {
+			singleTarget.clear();
+			singleTarget.add(new ColorTarget(targetColor, maxColorDiff, targetColor));
+		}
+		useTargets(singleTarget);
+		updateForeground();
+		startMask(pixels(), n);
+		maskRed = targetColor.getRed();
+		maskGreen = targetColor.getGreen();
+		maskBlue = targetColor.getBlue();
+		if (lastSize > 0 && (targetColor.getRGB() != lastTarget || w != lastWidth || h != lastHeight)) lastSize = 0;
+		boolean reuse = previousValid && foreground == null && singleTarget.get(0).equals(previousTarget) && metric == previousMetric
+				&& engine == previousEngine && minRegion == previousMinRegion && w == previousWidth && h == previousHeight;
+		previousValid = false;				// until the incremental scan says otherwise, as the other ways don't build the whole mask
+		boolean tracked = false;
+		if (tracking && lastSize > 0 && framesSinceFullScan < fullScanInterval) {
+			// the mask is only built as far as the search reaches
+			trackAttempts++;
+			regions.reset(w, h, n);
+			tracked = trackRegion(mask, w, h);
+			if (tracked) trackHits++;
+		}
+		if (tracked) {
+			framesSinceFullScan++;
+		}
+		else if (pyramidStep > 1 && findPyramid(targetColor, w, h)) {
+			framesSinceFullScan = 0;
+		}
+		else if (detectionStep > 1 && findCoarseToFine(targetColor, w, h)) {
+			framesSinceFullScan = 0;
+		}
+		else if (incremental) {
+			findIncremental(w, h, reuse);
+			framesSinceFullScan = 0;
+		}
+		else {
+			if (engine == Engine.PARALLEL_LABELING) buildMaskParallel(n);
+			else buildMask(0, n);
+			maskComplete(n);
+			regions.reset(w, h, countMatches(mask, n));
+			findRegions(mask, w, h);
+			framesSinceFullScan = 0;
+		}
+		if (tracking) rememberLargest(targetColor, w, h);
+	}
+
+	/**
+	 * Finds the regions in every detectionStep-th pixel, then the full resolution regions reaching into
+	 * a window one coarse pixel bigger all round than the largest of those. Returns false, having found nothing,
+	 * if that window is most of the frame, where scanning the whole frame is quicker.
+	 */
+	private boolean findCoarseToFine(Color targetColor, int w, int h) {
+		int step = detectionStep;
+		RegionSet found = findCoarse(targetColor, w, h, step);
+		int largest = found.largest();
+		if (largest < 0) {
+			regions.reset(w, h, 0);
+			return true;
+		}
+		int x0 = Math.max(0, (found.minX(largest) - 1) * step), x1 = Math.min(w - 1, (found.maxX(largest) + 2) * step - 1);
+		int y0 = Math.max(0, (found.minY(largest) - 1) * step), y1 = Math.min(h - 1, (found.maxY(largest) + 2) * step - 1);
+		if ((long) (x1 - x0 + 1) * (y1 - y0 + 1) * 2 > (long) w * h) return false;
+		regions.reset(w, h, w * h);
+		clearVisited(w * h);
+		searchWindow(mask, w, h, x0, y0, x1, y1, 0);
+		return true;
+	}
+
+	/**
+	 * Full scan in incremental mode: tests just the pixels of tiles that changed since the last frame (all of them if
+	 * the last frame can't be reused), and if any matches changed, finds the regions again around them.
+	 */
+	private void findIncremental(int w, int h, boolean reuse) {
+		int n = w * h, tw = (w + tileSize - 1) / tileSize, th = (h + tileSize - 1) / tileSize;
+		int[] rgb = pixels();
+		if (previousPixels.length < n) previousPixels = new int[n];
+		if (changedTiles.length < tw * th) {
+			changedTiles = new boolean[tw * th];
+			affectedTiles = new boolean[tw * th];
+		}
+		if (!reuse) {
+			if (engine == Engine.PARALLEL_LABELING) buildMaskParallel(n);
+			else buildMask(0, n);
+			maskComplete(n);
+			regions.reset(w, h, countMatches(mask, n));
+			findRegions(mask, w, h);
+			System.arraycopy(rgb, 0, previousPixels, 0, n);
+			skippedTiles = 0;
+		}
+		else {
+			int changed = 0, dirty = 0;
+			for (int t = 0; t < tw * th; t++) {
+				int x0 = (t % tw) * tileSize, y0 = (t / tw) * tileSize;
+				int x1 = Math.min(w, x0 + tileSize), y1 = Math.min(h, y0 + tileSize);
+				changedTiles[t] = false;
+				if (sameTile(rgb, w, x0, y0, x1, y1)) continue;
+				dirty++;
+				if (retestTile(rgb, w, x0, y0, x1, y1)) {
+					changedTiles[t] = true;
+					changed++;
+				}
+			}
+			maskComplete(n);
+			skippedTiles = 1 - (double) dirty / (tw * th);
+			if (changed > 0) {
+				if (engine == Engine.FLOOD_FILL) {
+					refloodChanged(w, h, tw, th);
+				}
+				else {
+					regions.reset(w, h, countMatches(mask, n));
+					findRegions(mask, w, h);
+				}
+			}
+		}
+		previousValid = true;
+		previousTarget = singleTarget.get(0);
+		previousMetric = metric;
+		previousEngine = engine;
+		previousMinRegion = minRegion;
+		previousWidth = w;
+		previousHeight = h;
+	}
+
+	/**
+	 * Whether the pixels in [x0,x1)*[y0,y1) are the same as last frame's.
+	 */
+	private boolean sameTile(int[] rgb, int w, int x0, int y0, int x1, int y1) {
+		for (int y = y0; y < y1; y++) {
+			for (int p = y * w + x0, end = y * w + x1; p < end; p++) {
+				if (rgb[p] != previousPixels[p]) return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Tests the pixels in [x0,x1)*[y0,y1) again, updating the mask and remembering them for next frame;
+	 * returns whether any match changed.
+	 */
+	private boolean retestTile(int[] rgb, int w, int x0, int y0, int x1, int y1) {
+		boolean changed = false;
+		for (int y = y0; y < y1; y++) {
+			for (int p = y * w + x0, end = y * w + x1; p < end; p++) {
+				long bit = 1L << p, was = mask[p >> 6] & bit;
+				if (colorMatch(rgb[p])) mask[p >> 6] |= bit;
+				else mask[p >> 6] &= ~bit;
+				if ((mask[p >> 6] & bit) != was) changed = true;
+			}
+			System.arraycopy(rgb, y * w + x0, previousPixels, y * w + x0, x1 - x0);
+		}
+		return changed;
+	}
+
+	/**
+	 * Finds the regions again where matches changed, exactly as a full flood fill would: a region that doesn't reach
+	 * into a changed tile or one next to it can't have changed (every neighbor of its points is unchanged), so it's
+	 * kept as it was; every other region reaches into such a tile, so flooding from the matches there finds them all.
+	 * Each is flooded from its first point in raster order, as the full scan does, and the kept and new regions
+	 * are merged in that order.
+	 */
+	private void refloodChanged(int w, int h, int tw, int th) {
+		for (int t = 0; t < tw * th; t++) {
+			boolean near = false;
+			int tx = t % tw, ty = t / tw;
+			for (int j = Math.max(ty - 1, 0); j <= Math.min(ty + 1, th - 1) && !near; j++) {
+				for (int i = Math.max(tx - 1, 0); i <= Math.min(tx + 1, tw - 1) && !near; i++) {
+					near = changedTiles[j * tw + i];
+				}
+			}
+			affectedTiles[t] = near;
+		}
+		RegionSet old = regions;
+		clearVisited(w * h);
+		// the old regions clear of the affected tiles stay, and their points are already taken
+		if (kept.length < old.size()) kept = new boolean[Math.max(old.size(), kept.length * 2)];
+		for (int r = 0; r < old.size(); r++) {
+			kept[r] = !touchesAffected(old, r, w, tw);
+			if (kept[r]) {
+				for (int i = 0; i < old.regionSize(r); i++) {
+					int p = old.point(r, i);
+					visited[p >> 6] |= 1L << p;
+				}
+			}
+		}
+		// flood from the matches in the affected tiles
+		RegionSet fresh = freshRegions;
+		fresh.reset(w, h, countMatches(mask, w * h));
+		regions = fresh;
+		try {
+			int tail = 0;
+			for (int y = 0; y < h; y++) {
+				for (int tx = 0; tx < tw; tx++) {
+					if (!affectedTiles[(y / tileSize) * tw + tx]) continue;
+					for (int p = y * w + tx * tileSize, end = y * w + Math.min(w, (tx + 1) * tileSize); p < end; p++) {
+						if ((mask[p >> 6] & ~visited[p >> 6] & (1L << p)) != 0) tail = floodFromFirst(w, h, p, tail);
 					}
+				}
+			}
+		}
+		finally {
+			regions = old;
+		}
+		// merge, in order of each region's first point (the new ones weren't necessarily found in that order)
+		if (freshOrder.length < fresh.size()) freshOrder = new long[Math.max(fresh.size(), freshOrder.length * 2)];
+		for (int f = 0; f < fresh.size(); f++) freshOrder[f] = (long) fresh.point(f, 0) << 32 | f;
+		Arrays.sort(freshOrder, 0, fresh.size());
+		RegionSet merged = spareRegions;
+		merged.reset(w, h, tailOf(old) + tailOf(fresh));
+		for (int r = 0, f = 0; r < old.size() || f < fresh.size(); ) {
+			while (r < old.size() && !kept[r]) r++;
+			if (r < old.size() && (f == fresh.size() || old.point(r, 0) < freshOrder[f] >> 32)) merged.append(old, r++);
+			else if (f < fresh.size()) merged.append(fresh, (int) freshOrder[f++]);
+		}
+		spareRegions = old;
+		regions = merged;
+	}
 
+	/**
+	 * Flood fills the region containing p (matching and not yet visited) from its first point in raster order,
+	 * flooding again from there if p wasn't it.
+	 */
+	private int floodFromFirst(int w, int h, int p, int tail) {
+		int start = tail, count = regions.size();
+		tail = flood(mask, w, h, p, tail);
+		if (regions.size() == count) return tail;		// too small to keep
+		int[] points = regions.points();
+		int first = p;
+		for (int i = start; i < tail; i++) first = Math.min(first, points[i]);
+		if (first == p) return tail;
+		for (int i = start; i < tail; i++) visited[points[i] >> 6] &= ~(1L << points[i]);
+		regions.drop();
+		return flood(mask, w, h, first, start);
+	}
+
+	/**
+	 * Whether region r has any points in an affected tile.
+	 */
+	private boolean touchesAffected(RegionSet set, int r, int w, int tw) {
+		int tx0 = set.minX(r) / tileSize, tx1 = set.maxX(r) / tileSize, ty0 = set.minY(r) / tileSize, ty1 = set.maxY(r) / tileSize;
+		boolean any = false;
+		for (int ty = ty0; ty <= ty1 && !any; ty++) {
+			for (int tx = tx0; tx <= tx1 && !any; tx++) any = affectedTiles[ty * tw + tx];
+		}
+		if (!any) return false;			// not even its bounding box does
+		for (int i = 0; i < set.regionSize(r); i++) {
+			int p = set.point(r, i);
+			if (affectedTiles[(p / w / tileSize) * tw + (p % w) / tileSize]) return true;
+		}
+		return false;
+	}
 
+	private static int tailOf(RegionSet set) {
+		int points = 0;
+		for (int r = 0; r < set.size(); r++) points += set.regionSize(r);
+		return points;
+	}
+
+	/**
+	 * Finds the regions (of at least minRegion/(step*step) points) in every step-th pixel across and down.
+	 */
+	private RegionSet findCoarse(Color targetColor, int w, int h, int step) {
+		int cw = (w + step - 1) / step, ch = (h + step - 1) / step;
+		if (coarse == null) coarse = new RegionFinder();
+		if (coarseImage == null || coarseImage.getWidth() != cw || coarseImage.getHeight() != ch) {
+			coarseImage = new BufferedImage(cw, ch, BufferedImage.TYPE_INT_RGB);
+		}
+		int[] rgb = pixels(), sampled = ((DataBufferInt) coarseImage.getRaster().getDataBuffer()).getData();
+		for (int y = 0, i = 0; y < ch; y++) {
+			for (int x = 0, p = y * step * w; x < cw; x++, p += step) sampled[i++] = rgb[p];
+		}
+		coarse.setImage(coarseImage);
+		coarse.maxColorDiff = maxColorDiff;
+		coarse.metric = metric;
+		coarse.maskBuilder = maskBuilder;
+		coarse.minRegion = Math.max(1, minRegion / (step * step));
+		coarse.foreground = null;
+		if (foreground != null) {
+			int words = (cw * ch + 63) >> 6;
+			if (coarseForeground.length < words) coarseForeground = new long[words];
+			else Arrays.fill(coarseForeground, 0, words, 0L);
+			for (int y = 0, i = 0; y < ch; y++) {
+				for (int x = 0, p = y * step * w; x < cw; x++, p += step, i++) {
+					if ((foreground[p >> 6] & (1L << p)) != 0) coarseForeground[i >> 6] |= 1L << i;
 				}
 			}
+			coarse.foreground = coarseForeground;
 		}
+		coarse.findRegions(targetColor);
+		return coarse.regions;
 	}
 
+	/**
+	 * Finds the candidate regions in every pyramidStep-th pixel, then floods each out at full resolution,
+	 * from each of its coarse points not already reached. Returns false, having found nothing, if the candidates
+	 * cover more than a quarter of the frame, where scanning the whole frame is quicker.
+	 */
+	private boolean findPyramid(Color targetColor, int w, int h) {
+		int step = pyramidStep;
+		RegionSet found = findCoarse(targetColor, w, h, step);
+		int cw = found.getWidth(), candidates = 0;
+		for (int r = 0; r < found.size(); r++) candidates += found.regionSize(r);
+		if (candidates * 4L > (long) cw * found.getHeight()) return false;
+		regions.reset(w, h, w * h);
+		clearVisited(w * h);
+		int tail = 0;
+		for (int r = 0; r < found.size(); r++) {
+			for (int i = 0; i < found.regionSize(r); i++) {
+				int c = found.point(r, i), p = (c / cw) * step * w + (c % cw) * step;
+				testPixel(p);
+				if ((mask[p >> 6] & ~visited[p >> 6] & (1L << p)) != 0) tail = flood(mask, w, h, p, tail);
+			}
+		}
+		return true;
+	}
 
 	/**
-	 * Returns the largest region detected (if any region has been detected)
+	 * Finds regions for several target colors at once, each with its own tolerance, and returns each target's
+	 * regions (in the same order as the targets). Each pixel is classified against every target in a single pass,
+	 * through lookup tables of which targets a color is close enough to (by the current metric); each target's regions
+	 * are then found from its own match bitmask with the current engine (tracking isn't used here).
+	 * The returned sets are reused by the next call.
 	 */
-	public ArrayList<Point> largestRegion() {
-		ArrayList<Point> largest = new ArrayList<Point>();
-		for (ArrayList<Point> region : regions) {
-			if (region.size() > largest.size()) {
-				largest = region;
+	public List<RegionSet> findRegions(List<ColorTarget> targets) {
+		if (targets.size() > 32) throw new IllegalArgumentException("at most 32 targets at once");
+		int w = image.getWidth(), h = image.getHeight(), n = w * h, words = (n + 63) >> 6;
+		useTargets(targets);
+		updateForeground();
+		while (targetMasks.size() < targets.size()) targetMasks.add(new long[0]);
+		while (targetRegions.size() < targets.size()) targetRegions.add(new RegionSet());
+		if (masks.length != targets.size()) masks = new long[targets.size()][];
+		for (int t = 0; t < masks.length; t++) {
+			masks[t] = targetMasks.get(t);
+			if (masks[t].length < words) targetMasks.set(t, masks[t] = new long[words]);
+		}
+		classify(pixels(), n, masks);
+		if (foreground != null) {
+			for (long[] targetMask : masks) {
+				for (int word = 0; word < words; word++) targetMask[word] &= foreground[word];
 			}
 		}
-		return largest;
+
+		RegionSet single = regions;
+		if (tested.length < words) tested = new long[words];
+		maskComplete(n);		// the target masks come complete
+		try {
+			for (int t = 0; t < masks.length; t++) {
+				regions = targetRegions.get(t);
+				regions.reset(w, h, countMatches(masks[t], n));
+				findRegions(masks[t], w, h);
+			}
+		}
+		finally {
+			regions = single;
+		}
+		return targetRegions.subList(0, targets.size());
 	}
-	//we will need this method to clear the painting when we hit 'c'
 
 	/**
-	 * clears the collection of the largest found regions
+	 * Runs the current engine over a match mask, into regions.
 	 */
-	public void clearLargestCollection() {
-		largestCollection = new ArrayList<ArrayList<Point>>();
+	private void findRegions(long[] mask, int w, int h) {
+		if (engine == Engine.LABELING) labelRegions(mask, w, h);
+		else if (engine == Engine.PARALLEL_LABELING) labelRegionsParallel(mask, w, h);
+		else floodFill(mask, w, h);
 	}
 
 	/**
-	 * Sets recoloredImage to be a copy of image,
-	 * but with each region a uniform random color,
-	 * so we can see where they are
+	 * Starts a new mask for the current pixels and target channels, with no pixels tested yet.
 	 */
-	public void recolorImage(int paintColor, char displayMode) {
-		// First copy the original
-		recoloredImage = new BufferedImage(image.getColorModel(), image.copyData(null), image.getColorModel().isAlphaPremultiplied(), null);
-		// Now recolor the regions in it
-		//commented out the random colors from part one
-		//for (ArrayList<Point> region : regions){
-		//int randColor = (int) (Math.random()*16777216);
-
-		//any time we recolor the image, we add the current largest region to the list of largest regions we've found
-		largestCollection.add(largestRegion());
-		if (displayMode == 'r') {
-			//if display mode is r, just fill the largest region
-			for (Point point : largestRegion()) {
-				recoloredImage.setRGB(point.x, point.y, paintColor);
-				//I don't want to keep painting while in r mode, so clear largestCollection
-				clearLargestCollection();
-				//}
+	private void startMask(int[] rgb, int n) {
+		int words = (n + 63) >> 6;
+		if (mask.length < words) {
+			mask = new long[words];
+			tested = new long[words];
+		}
+		Arrays.fill(tested, 0, words, 0);
+		maskPixels = rgb;
+	}
+
+	/**
+	 * Marks every pixel as tested (after building the whole mask, or for masks that come complete).
+	 */
+	private void maskComplete(int n) {
+		Arrays.fill(tested, 0, (n + 63) >> 6, -1L);
+	}
+
+	/**
+	 * Tests pixel p and sets its mask bit, if it hasn't been tested already.
+	 */
+	private void testPixel(int p) {
+		if ((tested[p >> 6] & (1L << p)) == 0) {
+			tested[p >> 6] |= 1L << p;
+			boolean inForeground = foreground == null || (foreground[p >> 6] & (1L << p)) != 0;
+			if (inForeground && colorMatch(maskPixels[p])) mask[p >> 6] |= 1L << p;
+			else mask[p >> 6] &= ~(1L << p);
+		}
+	}
+
+	/**
+	 * Sets mask bits [from,to) to whether each pixel matches the single target (and is foreground, with a background
+	 * model); from must be a multiple of 64.
+	 */
+	private void buildMask(int from, int to) {
+		int[] rgb = maskPixels;
+		if (tableMetric == ColorMetric.RGB_BOX) {
+			maskBuilder.build(rgb, from, to, maskRed, maskGreen, maskBlue, maxColorDiff, mask);
+		}
+		else {
+			for (int word = from >> 6; (word << 6) < to; word++) {
+				long bits = 0;
+				for (int p = word << 6, end = Math.min(to, p + 64), bit = 0; p < end; p++, bit++) {
+					if (colorMatch(rgb[p])) bits |= 1L << bit;
+				}
+				mask[word] = bits;
 			}
-		} else if (displayMode == 'p') {
-			//if display mode is p, color the largest region plus all the largest regions we found since clicking
-			for (ArrayList<Point> region : largestCollection) {
-				for(Point p : region) {
-					recoloredImage.setRGB(p.x, p.y, paintColor);
+		}
+		if (foreground != null) {
+			for (int word = from >> 6; (word << 6) < to; word++) mask[word] &= foreground[word];
+		}
+	}
+
+	/**
+	 * Builds the whole match mask in chunks of whole words on the pool.
+	 */
+	private void buildMaskParallel(final int n) {
+		if (pool == null) pool = new ForkJoinPool(parallelism);
+		int chunks = parallelism * 4;
+		final int chunk = (((n + chunks - 1) / chunks) + 63) & ~63;
+		ArrayList<RecursiveAction> tasks = new ArrayList<RecursiveAction>();
+		for (int from = 0; from < n; from += chunk) {
+			final int start = from;
+			tasks.add(new RecursiveAction() {
+				protected void compute() {
+					buildMask(start, Math.min(n, start + chunk));
+				}
+			});
+		}
+		pool.invoke(new RecursiveAction() {
+			protected void compute() {
+				invokeAll(tasks);
+			}
+		});
+	}
+
+	/**
+	 * How many of the first n bits of a mask are set.
+	 */
+	private static int countMatches(long[] mask, int n) {
+		int count = 0;
+		for (int word = 0, words = (n + 63) >> 6; word < words; word++) {
+			count += Long.bitCount(mask[word]);
+		}
+		return count;
+	}
+
+	/**
+	 * Makes sure the match tables are for these targets and the current metric.
+	 */
+	private void useTargets(List<ColorTarget> targets) {
+		if (metric != tableMetric || !targets.equals(tableTargets)) buildTargetTables(targets);
+	}
+
+	/**
+	 * Fills the match tables. For RGB_BOX, which tests each channel separately, bit t of redTargets[v] is set if
+	 * red value v is close enough to target t's red, etc., which is exact. Other metrics get a table over the whole
+	 * color cube, quantized to cells of 4*4*4 colors, each taking the answer for the color at its center.
+	 */
+	private void buildTargetTables(List<ColorTarget> targets) {
+		if (metric == ColorMetric.RGB_BOX) {
+			Arrays.fill(redTargets, 0);
+			Arrays.fill(greenTargets, 0);
+			Arrays.fill(blueTargets, 0);
+			for (int t = 0; t < targets.size(); t++) {
+				ColorTarget target = targets.get(t);
+				Color c = target.getColor();
+				for (int v = 0; v < 256; v++) {
+					if (Math.abs(v - c.getRed()) < target.getTolerance()) redTargets[v] |= 1 << t;
+					if (Math.abs(v - c.getGreen()) < target.getTolerance()) greenTargets[v] |= 1 << t;
+					if (Math.abs(v - c.getBlue()) < target.getTolerance()) blueTargets[v] |= 1 << t;
+				}
+			}
+		}
+		else {
+			int cells = 1 << (3 * cellBits), side = 1 << cellBits, half = 1 << (7 - cellBits);
+			if (cellTargets == null) cellTargets = new int[cells];
+			float[][] coords = new float[targets.size()][3];
+			for (int t = 0; t < targets.size(); t++) {
+				Color c = targets.get(t).getColor();
+				metric.convert(c.getRed(), c.getGreen(), c.getBlue(), coords[t]);
+			}
+			float[] cell = new float[3];
+			for (int i = 0; i < cells; i++) {
+				int r = i >> (2 * cellBits), g = (i >> cellBits) & (side - 1), b = i & (side - 1);
+				metric.convert((r << (8 - cellBits)) + half, (g << (8 - cellBits)) + half, (b << (8 - cellBits)) + half, cell);
+				int matches = 0;
+				for (int t = 0; t < targets.size(); t++) {
+					if (metric.close(cell, coords[t], targets.get(t).getTolerance())) matches |= 1 << t;
+				}
+				cellTargets[i] = matches;
+			}
+		}
+		tableTargets = new ArrayList<ColorTarget>(targets);
+		tableMetric = metric;
+	}
+
+	/**
+	 * Sets each target's mask bits for the pixels matching it, looking each pixel up once for all targets.
+	 */
+	private void classify(int[] rgb, int n, long[][] masks) {
+		long[] bits = targetBits;
+		for (int word = 0; (word << 6) < n; word++) {
+			for (int p = word << 6, end = Math.min(n, p + 64), bit = 0; p < end; p++, bit++) {
+				int matches = matchingTargets(rgb[p]);
+				while (matches != 0) {
+					bits[Integer.numberOfTrailingZeros(matches)] |= 1L << bit;
+					matches &= matches - 1;
+				}
+			}
+			for (int t = 0; t < masks.length; t++) {
+				masks[t][word] = bits[t];
+				bits[t] = 0;
+			}
+		}
+	}
+
+	/**
+	 * Notes where the largest region is, for the next tracking search.
+	 */
+	private void rememberLargest(Color targetColor, int w, int h) {
+		int largest = regions.largest();
+		if (largest < 0) {
+			lastSize = 0;
+			return;
+		}
+		lastTarget = targetColor.getRGB();
+		lastWidth = w;
+		lastHeight = h;
+		lastSize = regions.regionSize(largest);
+		lastMinX = regions.minX(largest);
+		lastMinY = regions.minY(largest);
+		lastMaxX = regions.maxX(largest);
+		lastMaxY = regions.maxY(largest);
+		lastCentroidX = (int) regions.centroidX(largest);
+		lastCentroidY = (int) regions.centroidY(largest);
+	}
+
+	/**
+	 * Flood fills from each unvisited matching pixel, with points in breadth-first order.
+	 * Works from the match mask with a reused visited bitset, skipping 64 pixels at a time where there's nothing new,
+	 * and uses the region storage itself as the flood fill's work queue, so it allocates nothing per frame
+	 * once the buffers are sized.
+	 */
+	private void floodFill(long[] mask, int w, int h) {
+		int n = w * h;
+		clearVisited(n);
+		int tail = 0;
+		// loop through the pixels in order to find one that matches targetColor and hasn't been visited
+		for (int word = 0, words = (n + 63) >> 6; word < words; word++) {
+			long seeds;
+			while ((seeds = mask[word] & ~visited[word]) != 0) {
+				tail = flood(mask, w, h, (word << 6) + Long.numberOfTrailingZeros(seeds), tail);
+			}
+		}
+	}
+
+	private void clearVisited(int n) {
+		if (visited.length < (n + 63) >> 6) visited = new long[(n + 63) >> 6];
+		else Arrays.fill(visited, 0, (n + 63) >> 6, 0L);
+	}
+
+	/**
+	 * Flood fills the region containing seed (matching and not yet visited), queuing its points in the
+	 * region storage from index tail on. Keeps the region if it's big enough; returns where the next one goes.
+	 */
+	private int flood(long[] mask, int w, int h, int seed, int tail) {
+		int[] queue = regions.points();	// a region's points are exactly what its flood fill queued up
+		int start = tail, head = tail;
+		int region = regions.open(start);
+		visited[seed >> 6] |= 1L << seed;	// mark when queued, so nothing is queued twice
+		queue[tail++] = seed;
+
+		// flood fill, breadth first in the same neighbor order as always
+		while (head < tail) {
+			int curr = queue[head++];
+			int cx = curr % w, cy = curr / w;
+			regions.grow(region, cx, cy);
+			for (int i = Math.max(cx - 1, 0); i <= Math.min(cx + 1, w - 1); i++) {
+				for (int j = Math.max(cy - 1, 0); j <= Math.min(cy + 1, h - 1); j++) {
+					int q = j * w + i;
+					if ((tested[q >> 6] & (1L << q)) == 0) testPixel(q);	// only while tracking
+					if ((mask[q >> 6] & ~visited[q >> 6] & (1L << q)) != 0) {
+						visited[q >> 6] |= 1L << q;
+						queue[tail++] = q;
+					}
+				}
+			}
+		}
+		if (tail - start < minRegion) {	// If the region isn't big enough to be worth keeping, reuse its slot
+			regions.drop();
+			return start;
+		}
+		return tail;
+	}
+
+	/**
+	 * Tracking search: flood fills from the last largest region's centroid, then from any other matching pixel
+	 * in a window around its bounding box. Succeeds only if that finds a clear winner about as big as before;
+	 * otherwise (target lost, shrunk, or a close second nearby) the caller scans the whole frame.
+	 * The regions found are then just those reaching into the window.
+	 */
+	private boolean trackRegion(long[] mask, int w, int h) {
+		clearVisited(w * h);
+		int margin = Math.max(16, Math.max(lastMaxX - lastMinX, lastMaxY - lastMinY) / 2);
+		int x0 = Math.max(0, lastMinX - margin), x1 = Math.min(w - 1, lastMaxX + margin);
+		int y0 = Math.max(0, lastMinY - margin), y1 = Math.min(h - 1, lastMaxY + margin);
+		int tail = 0;
+		int seed = lastCentroidY * w + lastCentroidX;
+		testPixel(seed);
+		if ((mask[seed >> 6] & (1L << seed)) != 0) tail = flood(mask, w, h, seed, tail);
+		searchWindow(mask, w, h, x0, y0, x1, y1, tail);
+		int largest = regions.largest();
+		if (largest < 0 || regions.regionSize(largest) * 2 < lastSize) return false;
+		for (int r = 0; r < regions.size(); r++) {
+			if (r != largest && regions.regionSize(r) * 2 >= regions.regionSize(largest)) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Tests every pixel in the window [x0,x1]*[y0,y1] and flood fills from each matching one not yet visited,
+	 * queuing regions from tail on; returns where the next one goes.
+	 */
+	private int searchWindow(long[] mask, int w, int h, int x0, int y0, int x1, int y1, int tail) {
+		for (int y = y0; y <= y1; y++) {
+			int p0 = y * w + x0, p1 = y * w + x1;
+			for (int p = p0; p <= p1; p++) testPixel(p);
+			for (int word = p0 >> 6; word <= p1 >> 6; word++) {
+				long window = -1L;			// the bits of this word within the window's row
+				if (word == p0 >> 6) window &= -1L << p0;
+				if (word == p1 >> 6) window &= -1L >>> (63 - (p1 & 63));
+				long seeds;
+				while ((seeds = mask[word] & ~visited[word] & window) != 0) {
+					tail = flood(mask, w, h, (word << 6) + Long.numberOfTrailingZeros(seeds), tail);
+				}
+			}
+		}
+		return tail;
+	}
+
+	/**
+	 * Two-pass connected-component labeling, with points in raster order.
+	 * The first pass gives each matching pixel a provisional label and records which labels touch
+	 * in a union-find table; the second resolves every label to its component and gathers the regions.
+	 */
+	private void labelRegions(long[] mask, int w, int h) {
+		int n = w * h;
+		if (labels.length < n) {
+			labels = new int[n];
+			parent = new int[n + 1];
+		}
+		labelRows(mask, w, 0, h);
+		collectLabels(w, h);
+	}
+
+	/**
+	 * Labeling split into horizontal strips, labeled at the same time on the pool.
+	 * Each strip only creates labels for its own pixels, so strips never touch each other's part of the
+	 * union-find table; components crossing a seam are then joined up before the usual second pass.
+	 */
+	private void labelRegionsParallel(long[] mask, int w, int h) {
+		int n = w * h;
+		if (labels.length < n) {
+			labels = new int[n];
+			parent = new int[n + 1];
+		}
+		if (pool == null) pool = new ForkJoinPool(parallelism);
+		int strips = Math.min(h, parallelism * 4);		// a few strips per thread, to even out the load
+		int stripHeight = (h + strips - 1) / strips;
+		pool.invoke(new LabelStrips(mask, w, h, stripHeight, 0, (h + stripHeight - 1) / stripHeight));
+		for (int y = stripHeight; y < h; y += stripHeight) {
+			joinSeam(w, y);
+		}
+		collectLabels(w, h);
+	}
+
+	/**
+	 * Labels strips [first,last) by splitting the range in half until a single strip is left.
+	 */
+	private class LabelStrips extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final long[] mask;
+		private final int w, h, stripHeight, first, last;
+
+		LabelStrips(long[] mask, int w, int h, int stripHeight, int first, int last) {
+			this.mask = mask;
+			this.w = w;
+			this.h = h;
+			this.stripHeight = stripHeight;
+			this.first = first;
+			this.last = last;
+		}
+
+		protected void compute() {
+			if (last - first == 1) {
+				labelRows(mask, w, first * stripHeight, Math.min(h, (first + 1) * stripHeight));
+			}
+			else {
+				int mid = (first + last) / 2;
+				invokeAll(new LabelStrips(mask, w, h, stripHeight, first, mid),
+						new LabelStrips(mask, w, h, stripHeight, mid, last));
+			}
+		}
+	}
+
+	/**
+	 * Unions each labeled pixel in row y with its labeled neighbors in row y-1, across a strip seam.
+	 */
+	private void joinSeam(int w, int y) {
+		for (int x = 0, p = y * w; x < w; x++, p++) {
+			if (labels[p] == 0) continue;
+			if (x > 0 && labels[p - w - 1] != 0) union(labels[p], labels[p - w - 1]);
+			if (labels[p - w] != 0) union(labels[p], labels[p - w]);
+			if (x < w - 1 && labels[p - w + 1] != 0) union(labels[p], labels[p - w + 1]);
+		}
+	}
+
+	/**
+	 * First labeling pass over rows [y0,y1), ignoring anything above row y0.
+	 * A new label is the pixel's index + 1, and a union keeps the smaller label as the root,
+	 * so every component ends up labeled by its first pixel in raster order.
+	 */
+	private void labelRows(long[] mask, int w, int y0, int y1) {
+		for (int y = y0; y < y1; y++) {
+			for (int x = 0, p = y * w; x < w; x++, p++) {
+				if ((mask[p >> 6] & (1L << p)) == 0) {
+					labels[p] = 0;
+					continue;
+				}
+				int label = 0;
+				if (y > y0 && labels[p - w] != 0) {
+					// north touches west, north-west and north-east, so they already share its label
+					label = labels[p - w];
+				}
+				else {
+					if (x > 0 && labels[p - 1] != 0) label = labels[p - 1];
+					else if (x > 0 && y > y0 && labels[p - w - 1] != 0) label = labels[p - w - 1];
+					if (x < w - 1 && y > y0 && labels[p - w + 1] != 0) {
+						label = (label == 0) ? labels[p - w + 1] : union(label, labels[p - w + 1]);
 					}
 				}
+				if (label == 0) {
+					label = p + 1;
+					parent[label] = label;
+				}
+				labels[p] = label;
+			}
+		}
+	}
 
+	/**
+	 * Finds a label's root, halving the path on the way.
+	 */
+	private int find(int label) {
+		while (parent[label] != label) {
+			parent[label] = parent[parent[label]];
+			label = parent[label];
+		}
+		return label;
+	}
+
+	/**
+	 * Merges the components of two labels; returns the surviving (smaller) root.
+	 */
+	private int union(int a, int b) {
+		a = find(a);
+		b = find(b);
+		if (a < b) parent[b] = a;
+		else parent[a] = b;
+		return Math.min(a, b);
+	}
+
+	/**
+	 * Second labeling pass: resolves labels to components, gathering each component's size,
+	 * bounding box and centroid, then drops its points into the region storage in raster order.
+	 */
+	private void collectLabels(int w, int h) {
+		int n = w * h;
+		// every label points below itself, so in increasing order one step reaches the root
+		for (int p = 0; p < n; p++) {
+			if (labels[p] == p + 1) parent[p + 1] = parent[parent[p + 1]];
+		}
+		// components are numbered as their first pixel comes up; a root's parent entry then holds -(number+1)
+		for (int y = 0, p = 0; y < h; y++) {
+			for (int x = 0; x < w; x++, p++) {
+				if (labels[p] == 0) continue;
+				int root = parent[labels[p]], region;
+				if (root == p + 1) {
+					region = regions.open(0);
+					parent[root] = -region - 1;
+				}
+				else {
+					region = -(root < 0 ? root : parent[root]) - 1;
+				}
+				regions.grow(region, x, y);
+				labels[p] = region + 1;
 			}
+		}
+		regions.layout();
+		for (int p = 0; p < n; p++) {
+			if (labels[p] != 0) regions.place(labels[p] - 1, p);
+		}
+		regions.retain(minRegion);
+	}
 
+	/**
+	 * Returns the regions found by the last findRegions.
+	 */
+	public RegionSet getRegions() {
+		return regions;
+	}
+
+	/**
+	 * Returns the largest region detected (if any region has been detected)
+	 */
+	public ArrayList<Point> largestRegion() {
+		int largest = regions.largest();
+		if (largest < 0) return new ArrayList<Point>();
+		return regions.toPoints(largest);
+	}
+
+	/**
+	 * Returns the largest region detected as horizontal runs (empty if no region has been detected).
+	 */
+	public RegionRuns largestRegionRuns() {
+		RegionRuns runs = new RegionRuns();
+		int largest = regions.largest();
+		if (largest >= 0) regions.runs(largest, runs);
+		return runs;
+	}
+
+	/**
+	 * Clears the paint layer that 'p' mode accumulates the largest regions into; CamPaint does when 'c' is hit.
+	 */
+	public void clearPaintLayer() {
+		for (int y = paintMinY; y <= paintMaxY; y++) {		// only the part that was ever painted needs wiping
+			Arrays.fill(paintLayer, y * paintWidth + paintMinX, y * paintWidth + paintMaxX + 1, 0);
+		}
+		paintMinX = paintMinY = Integer.MAX_VALUE;
+		paintMaxX = paintMaxY = -1;
+	}
+
+	/**
+	 * Sets recoloredImage to be a copy of image, with the largest region drawn in paintColor ('r'),
+	 * or with the paint layer on top ('p'): each frame's largest region is painted into the layer once,
+	 * and stays there in the color it was painted with until the layer is cleared.
+	 * Regions are drawn in the render style, straight into the raster of an output image reused from frame to frame.
+	 */
+	public void recolorImage(int paintColor, char displayMode) {
+		startRecolor();
+		recolorLargest(regions, paintColor, displayMode);
+		if (displayMode == 'p') compositePaintLayer();
+	}
+
+	/**
+	 * Like recolorImage, for the regions from the last findRegions(targets): each target's largest region is
+	 * filled, or painted, in the target's paint color.
+	 */
+	public void recolorImage(List<ColorTarget> targets, char displayMode) {
+		startRecolor();
+		for (int t = 0; t < targets.size() && t < targetRegions.size(); t++) {
+			recolorLargest(targetRegions.get(t), targets.get(t).getPaintColor().getRGB(), displayMode);
+		}
+		if (displayMode == 'p') compositePaintLayer();
+	}
+
+	/**
+	 * Copies the image into the output to recolor, and starts a new painting if the image size has changed.
+	 */
+	private void startRecolor() {
+		// First copy the original, into the reused output
+		int w = image.getWidth(), h = image.getHeight();
+		int type = image.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+		if (recoloredImage == null || recoloredImage.getWidth() != w || recoloredImage.getHeight() != h
+				|| recoloredImage.getType() != type) {
+			recoloredImage = new BufferedImage(w, h, type);
+			output = ((DataBufferInt) recoloredImage.getRaster().getDataBuffer()).getData();
+		}
+		System.arraycopy(pixels(), 0, output, 0, w * h);
+		if (paintWidth != w || paintHeight != h) {
+			// a new image size starts a new painting
+			paintWidth = w;
+			paintHeight = h;
+			paintLayer = new int[w * h];
+			paintMinX = paintMinY = Integer.MAX_VALUE;
+			paintMaxX = paintMaxY = -1;
+		}
+	}
+
+	/**
+	 * Fills the largest of the regions in the recolored image ('r'), or adds it to the paint layer ('p').
+	 */
+	private void recolorLargest(RegionSet regions, int paintColor, char displayMode) {
+		int largest = regions.largest();
+		if (largest >= 0) regions.runs(largest, largestRuns);
+		if (displayMode == 'r') {
+			//if display mode is r, just fill (outline, or tint) the largest region, a run at a time
+			if (largest >= 0) render(largestRuns, output, paintColor, true);
+			//I don't want to keep painting while in r mode, so clear the paint layer
+			clearPaintLayer();
+		} else if (displayMode == 'p') {
+			//if display mode is p, add the largest region to the paint layer, for compositing over the frame
+			if (largest >= 0) {
+				render(largestRuns, paintLayer, paintColor | 0xff000000, false);	// painted pixels are never 0, which means unpainted
+				paintMinX = Math.min(paintMinX, largestRuns.minX());
+				paintMinY = Math.min(paintMinY, largestRuns.minY());
+				paintMaxX = Math.max(paintMaxX, largestRuns.maxX());
+				paintMaxY = Math.max(paintMaxY, largestRuns.maxY());
+			}
+		}
+	}
+
+	/**
+	 * Draws runs into a raster in the render style: filled, just the outline, or (onto the frame) tinted.
+	 * Tinting the paint layer fills it, and it's tinted over the frame when composited instead.
+	 */
+	private void render(RegionRuns runs, int[] raster, int color, boolean onFrame) {
+		if (renderStyle == RenderStyle.OUTLINE) runs.outline(raster, image.getWidth(), color);
+		else if (renderStyle == RenderStyle.OVERLAY && onFrame) runs.blend(raster, image.getWidth(), color, overlayAlpha);
+		else runs.fill(raster, image.getWidth(), color);
+	}
+
+	/**
+	 * Lays the painted pixels of the layer over the output, straight into its raster (tinting, with OVERLAY),
+	 * touching only the layer's bounding box.
+	 */
+	private void compositePaintLayer() {
+		if (paintMaxX < 0) return;
+		boolean tint = renderStyle == RenderStyle.OVERLAY;
+		for (int y = paintMinY; y <= paintMaxY; y++) {
+			for (int p = y * paintWidth + paintMinX, end = y * paintWidth + paintMaxX; p <= end; p++) {
+				int painted = paintLayer[p];
+				if (painted != 0) output[p] = tint ? RegionRuns.blend(output[p], painted, overlayAlpha) : painted;
+			}
+		}
 	}
 }
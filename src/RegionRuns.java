@@ -0,0 +1,156 @@
+import java.util.Arrays;
+
+/**
+ * One region as horizontal runs of points, in raster order: run i covers x from runStart(i) to runEnd(i)
+ * (inclusive) on row runY(i). Three ints per run rather than one per point (or a Point object per point),
+ * and whole runs can be filled at once.
+ */
+public class RegionRuns {
+	private int[] ys = new int[16];						// row of each run
+	private int[] x0s = new int[16], x1s = new int[16];	// first and last x of each run
+	private int count;									// number of runs
+	private int size;									// number of points in all the runs
+	private int minX, minY, maxX, maxY;					// bounding box
+
+	/**
+	 * Empties the runs.
+	 */
+	void clear() {
+		count = size = 0;
+		minX = minY = Integer.MAX_VALUE;
+		maxX = maxY = -1;
+	}
+
+	/**
+	 * Appends the run from x0 to x1 on row y; runs must come in raster order.
+	 */
+	void add(int y, int x0, int x1) {
+		if (count == ys.length) {
+			ys = Arrays.copyOf(ys, count * 2);
+			x0s = Arrays.copyOf(x0s, count * 2);
+			x1s = Arrays.copyOf(x1s, count * 2);
+		}
+		ys[count] = y;
+		x0s[count] = x0;
+		x1s[count] = x1;
+		count++;
+		size += x1 - x0 + 1;
+		if (x0 < minX) minX = x0;
+		if (x1 > maxX) maxX = x1;
+		if (y < minY) minY = y;
+		maxY = y;
+	}
+
+	/**
+	 * Number of runs.
+	 */
+	public int runs() {
+		return count;
+	}
+
+	public int runY(int i) {
+		return ys[i];
+	}
+
+	public int runStart(int i) {
+		return x0s[i];
+	}
+
+	public int runEnd(int i) {
+		return x1s[i];
+	}
+
+	/**
+	 * Number of points.
+	 */
+	public int size() {
+		return size;
+	}
+
+	public int minX() {
+		return minX;
+	}
+
+	public int minY() {
+		return minY;
+	}
+
+	public int maxX() {
+		return maxX;
+	}
+
+	public int maxY() {
+		return maxY;
+	}
+
+	/**
+	 * Sets every point to color in a packed raster (y*width + x).
+	 */
+	public void fill(int[] raster, int width, int color) {
+		for (int i = 0; i < count; i++) {
+			int row = ys[i] * width;
+			Arrays.fill(raster, row + x0s[i], row + x1s[i] + 1, color);
+		}
+	}
+
+	/**
+	 * Sets just the region's edge points (those with a horizontal or vertical neighbor outside it) to color
+	 * in a packed raster: the ends of each run, and the parts of it not covered by the rows above and below.
+	 */
+	public void outline(int[] raster, int width, int color) {
+		int prev = 0, prevEnd = 0;			// runs [prev, prevEnd) are on the row above, if any
+		for (int row = 0, rowEnd; row < count; row = rowEnd) {
+			int y = ys[row];
+			for (rowEnd = row + 1; rowEnd < count && ys[rowEnd] == y; rowEnd++);
+			if (prevEnd == 0 || ys[prev] != y - 1) prev = prevEnd = row;	// nothing directly above
+			int next = rowEnd, nextEnd = rowEnd;
+			if (next < count && ys[next] == y + 1) {
+				for (nextEnd = next + 1; nextEnd < count && ys[nextEnd] == y + 1; nextEnd++);
+			}
+			for (int i = row; i < rowEnd; i++) {
+				int line = y * width;
+				raster[line + x0s[i]] = color;
+				raster[line + x1s[i]] = color;
+				fillUncovered(raster, line, x0s[i], x1s[i], prev, prevEnd, color);
+				fillUncovered(raster, line, x0s[i], x1s[i], next, nextEnd, color);
+			}
+			prev = row;
+			prevEnd = rowEnd;
+		}
+	}
+
+	/**
+	 * Fills the parts of [x0,x1] on a raster line that runs [from,to) (of another row) don't cover.
+	 */
+	private void fillUncovered(int[] raster, int line, int x0, int x1, int from, int to, int color) {
+		int x = x0;
+		for (int j = from; j < to && x <= x1; j++) {
+			if (x1s[j] < x) continue;
+			if (x0s[j] > x1) break;
+			if (x0s[j] > x) Arrays.fill(raster, line + x, line + x0s[j], color);
+			x = x1s[j] + 1;
+		}
+		if (x <= x1) Arrays.fill(raster, line + x, line + x1 + 1, color);
+	}
+
+	/**
+	 * Blends color over every point of a packed raster, alpha (0-255) of the way from what's there.
+	 */
+	public void blend(int[] raster, int width, int color, int alpha) {
+		for (int i = 0; i < count; i++) {
+			for (int p = ys[i] * width + x0s[i], end = ys[i] * width + x1s[i]; p <= end; p++) {
+				raster[p] = blend(raster[p], color, alpha);
+			}
+		}
+	}
+
+	/**
+	 * The color alpha (0-255) of the way from under to over, keeping under's alpha channel.
+	 */
+	static int blend(int under, int over, int alpha) {
+		int a = alpha + (alpha >> 7), b = 256 - a;		// 0-256, so that 255 is all the way
+		return (under & 0xff000000)
+				| ((((under & 0xff00ff) * b + (over & 0xff00ff) * a) >> 8) & 0xff00ff)
+				| ((((under & 0xff00) * b + (over & 0xff00) * a) >> 8) & 0xff00);
+	}
+}
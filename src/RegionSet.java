@@ -0,0 +1,259 @@
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Compact storage for the regions found in one image.
+ * Each point is packed into a single int (y*width + x), and each region is a contiguous slice
+ * of one shared points array, so finding regions frame after frame reuses the same arrays
+ * instead of allocating a Point per pixel.
+ * Size, bounding box and centroid are kept per region as the points are added.
+ */
+public class RegionSet {
+	private int width, height;					// size of the image the regions came from
+	private int[] points = new int[0];			// packed points, region after region
+	private int[] starts = new int[16];			// where each region's points begin
+	private int[] sizes = new int[16];			// how many points each region has
+	private int[] minX = new int[16], minY = new int[16];	// bounding box corners of each region
+	private int[] maxX = new int[16], maxY = new int[16];
+	private long[] sumX = new long[16], sumY = new long[16];	// coordinate sums, for the centroids
+	private int count;							// number of regions
+	private long[] scratch = new long[0];		// reused bitset over a region's bounding box, for runs()
+
+	/**
+	 * Empties the set for an image of the given size, with room for at least capacity points.
+	 */
+	void reset(int width, int height, int capacity) {
+		this.width = width;
+		this.height = height;
+		if (points.length < capacity) points = new int[Math.min(width * height, Math.max(capacity, points.length * 2))];
+		count = 0;
+	}
+
+	/**
+	 * The backing points array, for the region finder to fill in directly.
+	 */
+	int[] points() {
+		return points;
+	}
+
+	/**
+	 * Starts a new, empty region whose points will begin at points[start]; returns its index.
+	 */
+	int open(int start) {
+		if (count == starts.length) {
+			int grown = count * 2;
+			starts = Arrays.copyOf(starts, grown);
+			sizes = Arrays.copyOf(sizes, grown);
+			minX = Arrays.copyOf(minX, grown);
+			minY = Arrays.copyOf(minY, grown);
+			maxX = Arrays.copyOf(maxX, grown);
+			maxY = Arrays.copyOf(maxY, grown);
+			sumX = Arrays.copyOf(sumX, grown);
+			sumY = Arrays.copyOf(sumY, grown);
+		}
+		starts[count] = start;
+		sizes[count] = 0;
+		minX[count] = minY[count] = Integer.MAX_VALUE;
+		maxX[count] = maxY[count] = -1;
+		sumX[count] = sumY[count] = 0;
+		return count++;
+	}
+
+	/**
+	 * Counts the point (x,y) into region r's size, bounding box and centroid.
+	 */
+	void grow(int r, int x, int y) {
+		sizes[r]++;
+		if (x < minX[r]) minX[r] = x;
+		if (x > maxX[r]) maxX[r] = x;
+		if (y < minY[r]) minY[r] = y;
+		if (y > maxY[r]) maxY[r] = y;
+		sumX[r] += x;
+		sumY[r] += y;
+	}
+
+	/**
+	 * Forgets the most recently opened region.
+	 */
+	void drop() {
+		count--;
+	}
+
+	/**
+	 * Appends a copy of region r of another set, for an image of the same size, after this set's last region.
+	 */
+	void append(RegionSet from, int r) {
+		int start = count == 0 ? 0 : starts[count - 1] + sizes[count - 1];
+		int to = open(start);
+		System.arraycopy(from.points, from.starts[r], points, start, from.sizes[r]);
+		sizes[to] = from.sizes[r];
+		minX[to] = from.minX[r];
+		minY[to] = from.minY[r];
+		maxX[to] = from.maxX[r];
+		maxY[to] = from.maxY[r];
+		sumX[to] = from.sumX[r];
+		sumY[to] = from.sumY[r];
+	}
+
+	/**
+	 * Once every region's size is known, lays the regions out back to back in the points array,
+	 * ready for place() to drop their points in.
+	 */
+	void layout() {
+		int next = 0;
+		for (int r = 0; r < count; r++) {
+			starts[r] = next;
+			next += sizes[r];
+		}
+	}
+
+	/**
+	 * Appends a packed point to region r; starts[r] serves as the cursor until retain() puts it back.
+	 */
+	void place(int r, int packed) {
+		points[starts[r]++] = packed;
+	}
+
+	/**
+	 * After layout() and place(), rewinds the cursors and keeps only regions with at least minSize points.
+	 */
+	void retain(int minSize) {
+		int kept = 0;
+		for (int r = 0; r < count; r++) {
+			if (sizes[r] < minSize) continue;
+			starts[kept] = starts[r] - sizes[r];
+			sizes[kept] = sizes[r];
+			minX[kept] = minX[r];
+			minY[kept] = minY[r];
+			maxX[kept] = maxX[r];
+			maxY[kept] = maxY[r];
+			sumX[kept] = sumX[r];
+			sumY[kept] = sumY[r];
+			kept++;
+		}
+		count = kept;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * Number of regions in the set.
+	 */
+	public int size() {
+		return count;
+	}
+
+	/**
+	 * Number of points in region r.
+	 */
+	public int regionSize(int r) {
+		return sizes[r];
+	}
+
+	/**
+	 * The packed point (y*width + x) at index i of region r.
+	 */
+	public int point(int r, int i) {
+		return points[starts[r] + i];
+	}
+
+	public int minX(int r) {
+		return minX[r];
+	}
+
+	public int minY(int r) {
+		return minY[r];
+	}
+
+	public int maxX(int r) {
+		return maxX[r];
+	}
+
+	public int maxY(int r) {
+		return maxY[r];
+	}
+
+	/**
+	 * Average x coordinate of region r's points.
+	 */
+	public double centroidX(int r) {
+		return (double) sumX[r] / sizes[r];
+	}
+
+	/**
+	 * Average y coordinate of region r's points.
+	 */
+	public double centroidY(int r) {
+		return (double) sumY[r] / sizes[r];
+	}
+
+	/**
+	 * Index of the first region with the most points, or -1 if there are none.
+	 */
+	public int largest() {
+		int largest = -1;
+		for (int r = 0; r < count; r++) {
+			if (largest < 0 || sizes[r] > sizes[largest]) largest = r;
+		}
+		return largest;
+	}
+
+	/**
+	 * Sets runs to region r's points as horizontal runs, whatever order the points were found in,
+	 * by marking them in a bitset over the bounding box and reading the rows back off it; returns runs.
+	 */
+	public RegionRuns runs(int r, RegionRuns runs) {
+		runs.clear();
+		if (sizes[r] == 0) return runs;
+		int x0 = minX[r], y0 = minY[r];
+		int words = (maxX[r] - x0 + 64) >> 6;			// per row
+		int rows = maxY[r] - y0 + 1;
+		if (scratch.length < words * rows) scratch = new long[words * rows];
+		Arrays.fill(scratch, 0, words * rows, 0);
+		for (int i = starts[r], end = starts[r] + sizes[r]; i < end; i++) {
+			int x = points[i] % width - x0, y = points[i] / width - y0;
+			scratch[y * words + (x >> 6)] |= 1L << x;
+		}
+		for (int y = 0; y < rows; y++) {
+			int row = y * words, x = 0, bw = words << 6;
+			while (x < bw) {
+				// skip to the next set bit, then to the next clear one
+				long bits = scratch[row + (x >> 6)] & (-1L << x);
+				if (bits == 0) {
+					x = ((x >> 6) + 1) << 6;
+					continue;
+				}
+				int start = ((x >> 6) << 6) + Long.numberOfTrailingZeros(bits);
+				x = start;
+				while (x < bw) {
+					long gaps = ~scratch[row + (x >> 6)] & (-1L << x);
+					if (gaps != 0) {
+						x = ((x >> 6) << 6) + Long.numberOfTrailingZeros(gaps);
+						break;
+					}
+					x = ((x >> 6) + 1) << 6;
+				}
+				runs.add(y0 + y, x0 + start, x0 + x - 1);
+			}
+		}
+		return runs;
+	}
+
+	/**
+	 * Unpacks region r into a list of points, in the order they were found.
+	 */
+	public ArrayList<Point> toPoints(int r) {
+		ArrayList<Point> list = new ArrayList<Point>(sizes[r]);
+		for (int i = starts[r], end = starts[r] + sizes[r]; i < end; i++) {
+			list.add(new Point(points[i] % width, points[i] / width));
+		}
+		return list;
+	}
+}
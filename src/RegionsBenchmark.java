@@ -0,0 +1,250 @@
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Headless benchmark suite for region finding and recoloring on synthetic frames.
+ * Reports operations per second and bytes allocated per operation on the calling thread.
+ * This is a quick look with no build: one JVM, a fixed warm-up and nothing keeping the JIT from dropping work, so
+ * for numbers to compare use the JMH suite in benchmarks/, which gets its operations from operation() here.
+ * Usage: java RegionsBenchmark [seconds per measurement] [only benchmarks whose name contains this]
+ */
+public class RegionsBenchmark {
+	private static final int[][] sizes = { { 320, 240 }, { 640, 480 }, { 1280, 720 } };
+	private static final com.sun.management.ThreadMXBean threads =
+			(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+	/**
+	 * Something to time; run() is called over and over.
+	 */
+	public interface Operation {
+		void run();
+	}
+
+	/**
+	 * What a measurement found.
+	 */
+	public static class Result {
+		public final double opsPerSecond;
+		public final double bytesPerOp;		// allocated on the measuring thread, or -1 if the JVM can't tell
+
+		Result(double opsPerSecond, double bytesPerOp) {
+			this.opsPerSecond = opsPerSecond;
+			this.bytesPerOp = bytesPerOp;
+		}
+	}
+
+	/**
+	 * Warms up for half the given time, then runs the operation for about the given time
+	 * (in this JVM, with no forking, so earlier measurements can affect later ones).
+	 */
+	public static Result measure(Operation op, double seconds) {
+		long warmupEnd = System.nanoTime() + (long) (seconds * 0.5e9);
+		while (System.nanoTime() < warmupEnd) op.run();
+		long thread = Thread.currentThread().getId();
+		long bytesBefore = threads.isThreadAllocatedMemorySupported() ? threads.getThreadAllocatedBytes(thread) : -1;
+		long ops = 0;
+		long start = System.nanoTime(), end = start + (long) (seconds * 1e9), now;
+		do {
+			op.run();
+			ops++;
+			now = System.nanoTime();
+		} while (now < end);
+		double bytesPerOp = bytesBefore < 0 ? -1 : (double) (threads.getThreadAllocatedBytes(thread) - bytesBefore) / ops;
+		return new Result(ops / ((now - start) / 1e9), bytesPerOp);
+	}
+
+	/**
+	 * One of the operations the JMH suite times, set up on a synthetic frame: "findRegions ENGINE", "largestRegion",
+	 * "recolorImage r", "recolorImage p", "mask scalar" or "mask vector" (just building the match mask). Its result is returned for JMH to consume, so the work can't be dropped.
+	 * JMH won't take benchmarks in the default package, so they get these by reflection.
+	 */
+	public static Supplier<Object> operation(String name, String scene, int width, int height) {
+		if (name.equals("mask scalar") || name.equals("mask vector")) {
+			final MaskBuilder builder = name.equals("mask scalar") ? MaskBuilder.scalar : MaskBuilder.vector();
+			if (builder == null) throw new IllegalStateException("no vector mask builder (needs --add-modules jdk.incubator.vector)");
+			final int[] rgb = SyntheticFrames.frame(SyntheticFrames.Scene.valueOf(scene), width, height, 1)
+					.getRGB(0, 0, width, height, null, 0, width);
+			final long[] mask = new long[(rgb.length + 63) >> 6];
+			return new Supplier<Object>() {
+				public Object get() {
+					builder.build(rgb, 0, rgb.length, SyntheticFrames.TARGET.getRed(), SyntheticFrames.TARGET.getGreen(),
+							SyntheticFrames.TARGET.getBlue(), RegionFinder.defaultColorDiff, mask);
+					return mask;
+				}
+			};
+		}
+		final RegionFinder finder = new RegionFinder(SyntheticFrames.frame(SyntheticFrames.Scene.valueOf(scene), width, height, 1));
+		if (name.startsWith("findRegions ")) {
+			finder.setEngine(RegionFinder.Engine.valueOf(name.substring("findRegions ".length())));
+			return new Supplier<Object>() {
+				public Object get() {
+					finder.findRegions(SyntheticFrames.TARGET);
+					return finder.getRegions();
+				}
+			};
+		}
+		finder.findRegions(SyntheticFrames.TARGET);
+		if (name.equals("largestRegion")) {
+			return new Supplier<Object>() {
+				public Object get() {
+					return finder.largestRegion();
+				}
+			};
+		}
+		if (name.equals("recolorImage r") || name.equals("recolorImage p")) {
+			final char mode = name.charAt(name.length() - 1);
+			return new Supplier<Object>() {
+				public Object get() {
+					finder.recolorImage(0xff0000ff, mode);
+					return finder.getRecoloredImage();
+				}
+			};
+		}
+		throw new IllegalArgumentException("no benchmark `" + name + "'");
+	}
+
+	public static void main(String[] args) {
+		double seconds = args.length > 0 ? Double.parseDouble(args[0]) : 1;
+		String filter = args.length > 1 ? args[1] : "";
+		System.out.printf("%-60s %12s %14s%n", "benchmark", "ops/s", "bytes/op");
+		for (int[] size : sizes) {
+			for (SyntheticFrames.Scene scene : SyntheticFrames.Scene.values()) {
+				BufferedImage frame = SyntheticFrames.frame(scene, size[0], size[1], 1);
+				String prefix = size[0] + "x" + size[1] + " " + scene + " ";
+				final RegionFinder finder = new RegionFinder(frame);
+
+				for (final RegionFinder.Engine engine : RegionFinder.Engine.values()) {
+					run(prefix + "findRegions " + engine, filter, seconds, new Operation() {
+						public void run() {
+							finder.setEngine(engine);
+							finder.findRegions(SyntheticFrames.TARGET);
+						}
+					});
+				}
+
+				// just the match mask, one pixel at a time against SIMD (when run with the vector module)
+				final int[] rgb = frame.getRGB(0, 0, size[0], size[1], null, 0, size[0]);
+				final long[] mask = new long[(rgb.length + 63) >> 6];
+				for (final MaskBuilder builder : new MaskBuilder[] { MaskBuilder.scalar, MaskBuilder.vector() }) {
+					if (builder == null) continue;
+					run(prefix + "mask " + builder, filter, seconds, new Operation() {
+						public void run() {
+							builder.build(rgb, 0, rgb.length, SyntheticFrames.TARGET.getRed(), SyntheticFrames.TARGET.getGreen(),
+									SyntheticFrames.TARGET.getBlue(), RegionFinder.defaultColorDiff, mask);
+						}
+					});
+				}
+
+				finder.setEngine(RegionFinder.Engine.FLOOD_FILL);
+				for (final ColorMetric metric : ColorMetric.values()) {
+					if (metric == ColorMetric.RGB_BOX) continue;		// measured above
+					run(prefix + "findRegions " + metric, filter, seconds, new Operation() {
+						public void run() {
+							finder.setColorMetric(metric);
+							finder.findRegions(SyntheticFrames.TARGET);
+						}
+					});
+				}
+				finder.setColorMetric(ColorMetric.RGB_BOX);
+
+				// looking at every 2nd or 4th pixel first, then refining around the largest region, or all of them
+				for (final int step : new int[] { 2, 4 }) {
+					run(prefix + "findRegions step " + step, filter, seconds, new Operation() {
+						public void run() {
+							finder.setDetectionStep(step);
+							finder.findRegions(SyntheticFrames.TARGET);
+						}
+					});
+				}
+				finder.setDetectionStep(1);
+				for (final int step : new int[] { 2, 4 }) {
+					run(prefix + "findRegions pyramid " + step, filter, seconds, new Operation() {
+						public void run() {
+							finder.setPyramidStep(step);
+							finder.findRegions(SyntheticFrames.TARGET);
+						}
+					});
+				}
+				finder.setPyramidStep(1);
+
+				// the background model's update, which searching only the foreground adds to each frame
+				final BackgroundModel background = new BackgroundModel();
+				final int width = size[0], height = size[1];
+				run(prefix + "background update", filter, seconds, new Operation() {
+					public void run() {
+						background.update(rgb, width, height);
+					}
+				});
+
+				// three colors in one pass, against finding each in turn
+				final List<ColorTarget> targets = Arrays.asList(new ColorTarget(SyntheticFrames.TARGET),
+						new ColorTarget(Color.red), new ColorTarget(Color.green));
+				run(prefix + "findRegions 3 targets", filter, seconds, new Operation() {
+					public void run() {
+						finder.findRegions(targets);
+					}
+				});
+				run(prefix + "findRegions 3 targets one at a time", filter, seconds, new Operation() {
+					public void run() {
+						for (ColorTarget target : targets) finder.findRegions(target.getColor());
+					}
+				});
+
+				finder.findRegions(SyntheticFrames.TARGET);
+				run(prefix + "largestRegion", filter, seconds, new Operation() {
+					public void run() {
+						finder.largestRegion();
+					}
+				});
+				for (final char mode : new char[] { 'r', 'p' }) {
+					for (RegionFinder.RenderStyle style : RegionFinder.RenderStyle.values()) {
+						finder.setRenderStyle(style);
+						finder.clearPaintLayer();
+						run(prefix + "recolorImage " + mode + " " + style, filter, seconds, new Operation() {
+							public void run() {
+								finder.recolorImage(0xff0000ff, mode);
+							}
+						});
+					}
+				}
+				finder.setRenderStyle(RegionFinder.RenderStyle.FILL);
+				final BufferedImage image = frame;
+				run(prefix + "recolorImage r old copy+setRGB", filter, seconds, new Operation() {
+					public void run() {
+						copyAndSetRGB(image, finder.getRegions(), 0xff0000ff);
+					}
+				});
+			}
+		}
+		System.exit(0);
+	}
+
+	/**
+	 * The way recolorImage 'r' used to work: a fresh copy of the image, then setRGB for each point of the largest region.
+	 */
+	private static BufferedImage copyAndSetRGB(BufferedImage image, RegionSet regions, int paintColor) {
+		BufferedImage recolored = new BufferedImage(image.getColorModel(), image.copyData(null),
+				image.getColorModel().isAlphaPremultiplied(), null);
+		int largest = regions.largest();
+		if (largest >= 0) {
+			for (int i = 0; i < regions.regionSize(largest); i++) {
+				int point = regions.point(largest, i);
+				recolored.setRGB(point % image.getWidth(), point / image.getWidth(), paintColor);
+			}
+		}
+		return recolored;
+	}
+
+	/**
+	 * Measures and prints one benchmark, if its name passes the filter.
+	 */
+	private static void run(String name, String filter, double seconds, Operation op) {
+		if (!name.contains(filter)) return;
+		Result result = measure(op, seconds);
+		System.out.printf("%-60s %12.1f %14.0f%n", name, result.opsPerSecond, result.bytesPerOp);
+	}
+}
@@ -0,0 +1,494 @@
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.*;
+import java.util.*;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Checks that region finding still gives exactly the same results, and is still as fast, with no camera or pictures.
+ * Runs seeded synthetic sequences (moving blobs, blobs in noise, blobs on a drifting gradient) through a FramePipeline
+ * with each of several finder configurations, doing findRegions, largestRegion and recolorImage on every frame, and
+ * hashes the regions found (as sets of points) and the recolored frames. The hashes are compared with those stored
+ * in a golden file, and each run's sustained frames per second and 99th percentile frame time are reported
+ * (the p99 leaves out the first tenth of each run, while the JIT warms up).
+ * The exit status is 1 if any hash is missing or different, or any run is slower than the limits given, so it can
+ * fail a build.
+ * When the SIMD mask builder is available (run with --add-modules jdk.incubator.vector), its masks are also checked
+ * bit for bit against the scalar builder's, on random frames, tolerances and ranges.
+ * Last, TrackingServer runs several synthetic streams on fewer workers: without a frame rate, every frame of every
+ * stream has to be processed, with the same regions as HeadlessTracker finds in that stream alone; with a frame rate
+ * the workers can't keep up with, the streams have to get about equal shares of them.
+ * Usage: java RegressionHarness [--record] [--frames n] [--min-fps f] [--max-p99 ms] [goldenFile]
+ * where --record (re)writes the golden file from this run instead of checking against it
+ * (the golden file is regression-golden.txt unless given).
+ */
+public class RegressionHarness {
+	private static final int width = 640, height = 480;
+
+	/**
+	 * The kinds of sequence.
+	 */
+	enum Scene { BLOBS, NOISE, GRADIENT }
+
+	/**
+	 * A finder configuration to check: how it's set up, and whether it tracks several colors at once.
+	 */
+	enum Config {
+		FLOOD, LABELING, PARALLEL, TRACKING, INCREMENTAL, PYRAMID, DISTANCE, MULTI;
+
+		void setUp(RegionFinder finder) {
+			if (this == LABELING) finder.setEngine(RegionFinder.Engine.LABELING);
+			if (this == PARALLEL) finder.setEngine(RegionFinder.Engine.PARALLEL_LABELING);
+			if (this == TRACKING) finder.setTracking(true);
+			if (this == INCREMENTAL) finder.setIncremental(true);
+			if (this == PYRAMID) finder.setPyramidStep(2);
+			if (this == DISTANCE) finder.setColorMetric(ColorMetric.RGB_DISTANCE);
+		}
+	}
+
+	/**
+	 * A reproducible sequence: blobs of the target color (each a different size) bouncing around over
+	 * a flat background, fresh noise every frame, or a gradient through colors near the target that drifts.
+	 */
+	static class Sequence implements FrameSource<int[]> {
+		private final Scene scene;
+		private final int frames;
+		private final long seed;
+		private final int blobs = 6;
+		private final double[] xs = new double[blobs], ys = new double[blobs], dxs = new double[blobs], dys = new double[blobs];
+		private final int[] radii = new int[blobs];
+		private int next;
+
+		Sequence(Scene scene, int frames, long seed) {
+			this.scene = scene;
+			this.frames = frames;
+			this.seed = seed;
+		}
+
+		public void start() {
+			Random random = new Random(seed);
+			for (int b = 0; b < blobs; b++) {
+				radii[b] = 8 + 5 * b;
+				xs[b] = radii[b] + random.nextInt(width - 2 * radii[b]);
+				ys[b] = radii[b] + random.nextInt(height - 2 * radii[b]);
+				dxs[b] = random.nextInt(13) - 6;
+				dys[b] = random.nextInt(13) - 6;
+			}
+			next = 0;
+		}
+
+		public int getWidth() {
+			return width;
+		}
+
+		public int getHeight() {
+			return height;
+		}
+
+		public int[] grab(int[] reuse) {
+			if (next >= frames) return null;
+			if (reuse == null) reuse = new int[width * height];
+			int target = SyntheticFrames.TARGET.getRGB() & 0xffffff;
+			switch (scene) {
+				case BLOBS:
+					Arrays.fill(reuse, 0x303030);
+					break;
+				case NOISE:
+					// every frame different, with a speck of the target color here and there
+					Random random = new Random(seed * 31 + next);
+					for (int i = 0; i < reuse.length; i++) {
+						reuse[i] = random.nextInt(50) == 0 ? target : random.nextInt(0x1000000);
+					}
+					break;
+				case GRADIENT:
+					// red and green ramp across, blue down, passing through the target's neighborhood as it drifts
+					for (int y = 0, i = 0; y < height; y++) {
+						for (int x = 0; x < width; x++, i++) {
+							int r = (x + next) * 100 / width % 100, g = 60 + (x + next) * 60 / width % 60;
+							reuse[i] = r << 16 | g << 8 | (160 + y * 80 / height);
+						}
+					}
+					break;
+			}
+			for (int b = 0; b < blobs; b++) {
+				SyntheticFrames.fillDisc(reuse, width, height, (int) xs[b], (int) ys[b], radii[b], target);
+				xs[b] += dxs[b];
+				ys[b] += dys[b];
+				if (xs[b] < radii[b] || xs[b] >= width - radii[b]) dxs[b] = -dxs[b];
+				if (ys[b] < radii[b] || ys[b] >= height - radii[b]) dys[b] = -dys[b];
+			}
+			next++;
+			return reuse;
+		}
+
+		public BufferedImage toImage(int[] frame, BufferedImage reuse) {
+			if (reuse == null) reuse = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+			System.arraycopy(frame, 0, ((DataBufferInt) reuse.getRaster().getDataBuffer()).getData(), 0, frame.length);
+			return reuse;
+		}
+
+		public void stop() {
+		}
+	}
+
+	/**
+	 * Finds, recolors and hashes each frame, timing it.
+	 */
+	static class Checker implements FramePipeline.Processor {
+		private final RegionFinder finder = new RegionFinder();
+		private final Config config;
+		private final List<ColorTarget> targets = Arrays.asList(new ColorTarget(SyntheticFrames.TARGET),
+				new ColorTarget(new Color(200, 40, 40)));
+		private final LatencyHistogram latency = new LatencyHistogram();	// not counting the warm-up frames
+		private final int warmup;				// frames before the timings count, while the JIT gets going
+		private int frames;
+		private long hash;
+
+		Checker(Config config, int warmup) {
+			this.config = config;
+			this.warmup = warmup;
+			config.setUp(finder);
+		}
+
+		public void process(BufferedImage image) {
+			long start = System.nanoTime();
+			finder.setImage(image);
+			long frameHash;
+			if (config == Config.MULTI) {
+				frameHash = 0;
+				for (RegionSet regions : finder.findRegions(targets)) frameHash = mix(frameHash + hash(regions));
+				finder.recolorImage(targets, 'p');
+			}
+			else {
+				finder.findRegions(SyntheticFrames.TARGET);
+				frameHash = hash(finder.getRegions());
+				long largest = 0;
+				for (Point p : finder.largestRegion()) largest += mix(p.y * width + p.x);
+				frameHash = mix(frameHash + largest);
+				finder.recolorImage(Color.blue.getRGB(), 'p');
+			}
+			int[] output = ((DataBufferInt) finder.getRecoloredImage().getRaster().getDataBuffer()).getData();
+			for (int p = 0; p < width * height; p++) frameHash = frameHash * 31 + output[p];
+			if (frames++ >= warmup) latency.record(System.nanoTime() - start);
+			hash = mix(hash + frameHash);
+		}
+
+		public void render() {
+			// nothing to show
+		}
+
+		/**
+		 * A hash of the regions that doesn't depend on the order they're in, or their points are in,
+		 * as engines are free to differ in those.
+		 */
+		private static long hash(RegionSet regions) {
+			long hash = regions.size();
+			for (int r = 0; r < regions.size(); r++) {
+				long region = 0;
+				for (int i = 0; i < regions.regionSize(r); i++) region += mix(regions.point(r, i));
+				hash += mix(region);
+			}
+			return hash;
+		}
+	}
+
+	/**
+	 * Builds masks with both builders for random pixels (mostly near the target, so both matches and misses),
+	 * tolerances and [from,to) ranges, returning how many times they differed. Words outside the range are
+	 * checked too, as neither may touch them.
+	 */
+	static int compareMaskBuilders(MaskBuilder scalar, MaskBuilder vector, int trials, long seed) {
+		Random random = new Random(seed);
+		int mismatches = 0;
+		for (int trial = 0; trial < trials; trial++) {
+			int n = 1 + random.nextInt(5000);
+			int red = random.nextInt(256), green = random.nextInt(256), blue = random.nextInt(256);
+			int tolerance = random.nextInt(8) == 0 ? random.nextInt(2) * 256 : random.nextInt(80);	// sometimes 0 or 256
+			int[] rgb = new int[n];
+			for (int p = 0; p < n; p++) {
+				if (random.nextInt(4) == 0) rgb[p] = random.nextInt();		// anything, alpha included
+				else rgb[p] = near(red, tolerance, random) << 16 | near(green, tolerance, random) << 8 | near(blue, tolerance, random);
+			}
+			int from = random.nextInt((n + 63) >> 6) << 6, to = from + random.nextInt(n - from + 1);
+			long[] expected = new long[(n + 63) >> 6], got = new long[expected.length];
+			long sentinel = random.nextLong();
+			Arrays.fill(expected, sentinel);
+			Arrays.fill(got, sentinel);
+			scalar.build(rgb, from, to, red, green, blue, tolerance, expected);
+			vector.build(rgb, from, to, red, green, blue, tolerance, got);
+			if (!Arrays.equals(expected, got)) mismatches++;
+		}
+		return mismatches;
+	}
+
+	/**
+	 * Hashes each event's frame number and regions (but not its time or velocities, which depend on timing), in order,
+	 * and counts the events. Read it once the stream is closed.
+	 */
+	static class EventHasher implements RegionEventListener {
+		private long hash, events;
+
+		public void regionEvents(RegionEvent[] batch, int count) {
+			for (int e = 0; e < count; e++) {
+				RegionEvent event = batch[e];
+				long regions = 0;
+				for (int i = 0; i < event.size(); i++) {
+					long box = (long) event.minX(i) << 48 | (long) event.minY(i) << 32 | event.maxX(i) << 16 | event.maxY(i);
+					regions += mix(mix(mix(event.area(i) + 31L * Float.floatToIntBits(event.centroidX(i)))
+							+ Float.floatToIntBits(event.centroidY(i))) + box);
+				}
+				hash = mix(hash * 31 + event.getFrame() + regions);
+				events++;
+			}
+		}
+	}
+
+	/**
+	 * A source that holds back its first grab until the gate opens, so listeners can subscribe and all the streams
+	 * can start together.
+	 */
+	static class Gated implements FrameSource<int[]> {
+		private final FrameSource<int[]> source;
+		private final CountDownLatch gate;
+
+		Gated(FrameSource<int[]> source, CountDownLatch gate) {
+			this.source = source;
+			this.gate = gate;
+		}
+
+		public void start() throws Exception {
+			source.start();
+		}
+
+		public int getWidth() {
+			return source.getWidth();
+		}
+
+		public int getHeight() {
+			return source.getHeight();
+		}
+
+		public int[] grab(int[] reuse) throws Exception {
+			gate.await();
+			return source.grab(reuse);
+		}
+
+		public BufferedImage toImage(int[] frame, BufferedImage reuse) throws Exception {
+			return source.toImage(frame, reuse);
+		}
+
+		public void stop() throws Exception {
+			source.stop();
+		}
+	}
+
+	/**
+	 * Tracks streams synthetic streams (seeds 1 on) together on a TrackingServer with the given workers, every frame,
+	 * and checks each stream's frames all got processed, with region events identical to HeadlessTracker's on that
+	 * stream alone. Frames are kept within the event ring, so no event can be dropped. Returns the failures.
+	 */
+	static int checkServerResults(int streams, int workers, int frames) throws Exception {
+		List<ColorTarget> targets = Arrays.asList(new ColorTarget(SyntheticFrames.TARGET),
+				new ColorTarget(new Color(200, 40, 40)));
+		TrackingServer server = new TrackingServer(workers);
+		CountDownLatch gate = new CountDownLatch(1);
+		EventHasher[] served = new EventHasher[streams];
+		for (int s = 0; s < streams; s++) {
+			FrameSource<int[]> source = new Gated(new SyntheticSource(320, 240, frames, s + 1), gate);
+			source.start();
+			served[s] = new EventHasher();
+			server.add("stream" + s, source, targets, 0).getRegionEvents().subscribe(served[s]);
+		}
+		gate.countDown();
+		server.awaitFinished();
+		List<TrackingServer.Session<?>> sessions = server.getSessions();
+		for (TrackingServer.Session<?> session : sessions) session.getRegionEvents().close();
+		server.stop();
+		int failures = 0;
+		for (int s = 0; s < streams; s++) {
+			SyntheticSource source = new SyntheticSource(320, 240, frames, s + 1);
+			HeadlessTracker tracker = new HeadlessTracker(targets, 'w', null);
+			tracker.setOutput(null);
+			EventHasher alone = new EventHasher();
+			tracker.getRegionEvents().subscribe(alone);
+			source.start();
+			FramePipeline<int[]> pipeline = new FramePipeline<int[]>(source, tracker, 0);
+			pipeline.setDropFrames(false);
+			pipeline.start();
+			pipeline.awaitFinished();
+			tracker.getRegionEvents().close();
+			PipelineStats stats = sessions.get(s).getStats();
+			String verdict = "ok";
+			if (stats.getFrames() != frames || stats.getDroppedFrames() != 0 || served[s].events != frames) {
+				verdict = "MISSED FRAMES";
+			}
+			else if (served[s].hash != alone.hash || alone.events != frames) {
+				verdict = "MISMATCH (HeadlessTracker " + String.format("%016x", alone.hash) + ")";
+			}
+			if (!verdict.equals("ok")) failures++;
+			System.out.printf("tracking server: stream %d of %d on %d workers, %d of %d frames, %d events, %016x  %s%n", s,
+					streams, workers, stats.getFrames(), frames, served[s].events, served[s].hash, verdict);
+		}
+		return failures;
+	}
+
+	/**
+	 * Tracks streams endless synthetic streams, each grabbed at frameRate, on one worker for the given time, and
+	 * checks that none was processed less than three quarters as often as the most processed, so long as the worker
+	 * couldn't keep up (otherwise it says so, as there's nothing to share). Returns the failures.
+	 */
+	static int checkServerShares(int streams, double frameRate, double seconds) throws Exception {
+		List<ColorTarget> targets = Arrays.asList(new ColorTarget(SyntheticFrames.TARGET),
+				new ColorTarget(new Color(200, 40, 40)));
+		TrackingServer server = new TrackingServer(1);
+		CountDownLatch gate = new CountDownLatch(1);
+		for (int s = 0; s < streams; s++) {
+			FrameSource<int[]> source = new Gated(new SyntheticSource(width, height, -1, s + 1), gate);
+			source.start();
+			server.add("stream" + s, source, targets, frameRate);
+		}
+		gate.countDown();
+		Thread.sleep((long) (seconds * 1000));
+		server.stop();
+		long least = Long.MAX_VALUE, most = 0, dropped = 0;
+		StringBuilder counts = new StringBuilder();
+		for (TrackingServer.Session<?> session : server.getSessions()) {
+			long frames = session.getStats().getFrames();
+			least = Math.min(least, frames);
+			most = Math.max(most, frames);
+			dropped += session.getStats().getDroppedFrames();
+			counts.append(' ').append(frames);
+		}
+		String verdict = dropped == 0 ? "ok (the worker kept up, so nothing to share)"
+				: least >= most * 3 / 4 && least > 0 ? "ok" : "UNFAIR";
+		System.out.printf("tracking server: %d streams at %.0f frames/s on 1 worker for %.0f s, processed%s, dropped %d  %s%n",
+				streams, frameRate, seconds, counts, dropped, verdict);
+		return verdict.startsWith("ok") ? 0 : 1;
+	}
+
+	/**
+	 * A channel value within about the tolerance of c, either side of it.
+	 */
+	private static int near(int c, int tolerance, Random random) {
+		int spread = Math.max(1, tolerance + 2);
+		return Math.max(0, Math.min(255, c - spread + random.nextInt(2 * spread + 1)));
+	}
+
+	/**
+	 * Scrambles the bits of x (SplitMix64's finalizer).
+	 */
+	static long mix(long x) {
+		x = (x ^ (x >>> 30)) * 0xbf58476d1ce4e5b9L;
+		x = (x ^ (x >>> 27)) * 0x94d049bb133111ebL;
+		return x ^ (x >>> 31);
+	}
+
+	public static void main(String[] args) throws Exception {
+		boolean record = false;
+		int frames = 300;
+		double minFps = 0, maxP99 = 0;
+		File golden = new File("regression-golden.txt");
+		for (int a = 0; a < args.length; a++) {
+			if (args[a].equals("--record")) record = true;
+			else if (args[a].equals("--frames") && a + 1 < args.length) frames = Integer.parseInt(args[++a]);
+			else if (args[a].equals("--min-fps") && a + 1 < args.length) minFps = Double.parseDouble(args[++a]);
+			else if (args[a].equals("--max-p99") && a + 1 < args.length) maxP99 = Double.parseDouble(args[++a]);
+			else if (!args[a].startsWith("--")) golden = new File(args[a]);
+			else {
+				System.err.println("usage: java RegressionHarness [--record] [--frames n] [--min-fps f] [--max-p99 ms] [goldenFile]");
+				System.exit(1);
+			}
+		}
+		Map<String, String> expected = record ? new TreeMap<String, String>() : readGolden(golden);
+		Map<String, String> found = new TreeMap<String, String>();
+		int failures = 0;
+		for (Scene scene : Scene.values()) {
+			for (Config config : Config.values()) {
+				Sequence sequence = new Sequence(scene, frames, 1);
+				Checker checker = new Checker(config, frames / 10);
+				sequence.start();
+				FramePipeline<int[]> pipeline = new FramePipeline<int[]>(sequence, checker, 0);
+				pipeline.setDropFrames(false);		// every frame has to be checked
+				long start = System.nanoTime();
+				pipeline.start();
+				pipeline.awaitFinished();
+				double seconds = (System.nanoTime() - start) / 1e9;
+				double fps = frames / seconds, p99 = checker.latency.getP99Millis();
+				String key = String.format("%s %s %d %dx%d", scene, config, frames, width, height);
+				String hash = String.format("%016x", checker.hash);
+				found.put(key, hash);
+				String verdict = "ok";
+				if (!record) {
+					if (!expected.containsKey(key)) verdict = "NO GOLDEN HASH";
+					else if (!expected.get(key).equals(hash)) verdict = "MISMATCH (golden " + expected.get(key) + ")";
+				}
+				if (minFps > 0 && fps < minFps) verdict = (verdict.equals("ok") ? "" : verdict + ", ") + "TOO SLOW";
+				if (maxP99 > 0 && p99 > maxP99) verdict = (verdict.equals("ok") ? "" : verdict + ", ") + "P99 TOO HIGH";
+				if (!verdict.equals("ok")) failures++;
+				System.out.printf(Locale.ROOT, "%-9s %-12s %s  %7.1f frames/s  p99 %6.2f ms  %s%n", scene, config, hash, fps, p99,
+						verdict);
+			}
+		}
+		MaskBuilder vector = MaskBuilder.vector();
+		if (vector != null) {
+			int mismatches = compareMaskBuilders(MaskBuilder.scalar, vector, 2000, 1);
+			System.out.printf("mask builders: %s against scalar, 2000 random frames, %d mismatches  %s%n", vector, mismatches,
+					mismatches == 0 ? "ok" : "MISMATCH");
+			if (mismatches > 0) failures++;
+		}
+		else {
+			System.out.println("mask builders: no vector builder (run with --add-modules jdk.incubator.vector), not compared");
+		}
+		failures += checkServerResults(4, 2, 200);
+		failures += checkServerShares(4, 1000, 2);
+		if (record) {
+			writeGolden(golden, found);
+			System.out.println("Recorded " + found.size() + " hashes in " + golden);
+			if (failures > 0) System.exit(1);
+		}
+		else if (failures > 0) {
+			System.out.println(failures + " checks failed");
+			System.exit(1);
+		}
+		else {
+			System.out.println("All " + found.size() + " runs match " + golden);
+		}
+	}
+
+	/**
+	 * Reads "key hash" lines, skipping blank lines and # comments; the key is everything before the last space.
+	 */
+	private static Map<String, String> readGolden(File file) throws IOException {
+		Map<String, String> hashes = new TreeMap<String, String>();
+		if (!file.exists()) return hashes;			// everything will fail as missing
+		BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+		try {
+			String line;
+			while ((line = in.readLine()) != null) {
+				line = line.trim();
+				if (line.isEmpty() || line.startsWith("#")) continue;
+				int space = line.lastIndexOf(' ');
+				hashes.put(line.substring(0, space), line.substring(space + 1));
+			}
+		}
+		finally {
+			in.close();
+		}
+		return hashes;
+	}
+
+	private static void writeGolden(File file, Map<String, String> hashes) throws IOException {
+		PrintWriter out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+		try {
+			out.println("# Golden hashes for RegressionHarness: scene, finder configuration, frames, size, then the hash");
+			out.println("# of every frame's regions and recolored image. Regenerate with --record only when a change");
+			out.println("# to the results is intended.");
+			for (Map.Entry<String, String> entry : hashes.entrySet()) out.println(entry.getKey() + " " + entry.getValue());
+		}
+		finally {
+			out.close();
+		}
+	}
+}
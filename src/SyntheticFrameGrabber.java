@@ -0,0 +1,76 @@
+import org.bytedeco.javacpp.Loader;
+import org.bytedeco.javacv.Frame;
+import org.bytedeco.javacv.FrameGrabber;
+import org.bytedeco.opencv.global.opencv_core;
+
+import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
+
+/**
+ * A FrameGrabber that needs no camera: it cycles through pre-drawn synthetic BGR frames,
+ * with a blob of SyntheticFrames.TARGET's color moving across a small-blob scene.
+ */
+public class SyntheticFrameGrabber extends FrameGrabber {
+	private final byte[][] scenes;				// pre-drawn BGR frames, row after row with no padding
+	private Frame frame;						// native frame handed out by grab(), reused
+	private int next;							// which scene grab() hands out next
+
+	public SyntheticFrameGrabber(int width, int height, int count) {
+		imageWidth = width;
+		imageHeight = height;
+		scenes = new byte[count][];
+		int target = SyntheticFrames.TARGET.getRGB() & 0xffffff;
+		int[] rgb = new int[width * height];
+		for (int s = 0; s < count; s++) {
+			BufferedImage scene = SyntheticFrames.frame(SyntheticFrames.Scene.SMALL_BLOBS, width, height, s);
+			scene.getRGB(0, 0, width, height, rgb, 0, width);
+			SyntheticFrames.fillDisc(rgb, width, height, width * (s + 1) / (count + 1), height / 2, height / 8, target);
+			byte[] bgr = new byte[width * height * 3];
+			for (int p = 0, i = 0; p < rgb.length; p++, i += 3) {
+				bgr[i] = (byte) rgb[p];
+				bgr[i + 1] = (byte) (rgb[p] >> 8);
+				bgr[i + 2] = (byte) (rgb[p] >> 16);
+			}
+			scenes[s] = bgr;
+		}
+	}
+
+	@Override
+	public void start() {
+		Loader.load(opencv_core.class);		// a camera grabber would have loaded the natives the frame needs by now
+		frame = new Frame(imageWidth, imageHeight, Frame.DEPTH_UBYTE, 3);
+		next = 0;
+	}
+
+	@Override
+	public void stop() {
+		frame = null;
+	}
+
+	@Override
+	public void trigger() {
+	}
+
+	/**
+	 * Copies the next scene into the native frame, the way a camera driver would.
+	 */
+	@Override
+	public Frame grab() {
+		byte[] scene = scenes[next];
+		next = (next + 1) % scenes.length;
+		ByteBuffer pixels = (ByteBuffer) frame.image[0];
+		int rowBytes = imageWidth * 3;
+		for (int y = 0; y < imageHeight; y++) {
+			pixels.position(y * frame.imageStride);
+			pixels.put(scene, y * rowBytes, rowBytes);
+		}
+		pixels.position(0);
+		frameNumber++;
+		return frame;
+	}
+
+	@Override
+	public void release() {
+		stop();
+	}
+}
@@ -0,0 +1,61 @@
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Generates reproducible test frames, so region finding can be exercised and timed without a camera.
+ * Every scene is drawn from a seed, and the pixels that should be found all have exactly TARGET's color.
+ */
+public class SyntheticFrames {
+	public static final Color TARGET = new Color(40, 90, 200);		// the color to track in every scene
+
+	/**
+	 * The kinds of scene: one flat background color, random noise, many small blobs, or one blob covering most of the frame.
+	 */
+	public enum Scene { UNIFORM, NOISY, SMALL_BLOBS, HUGE_BLOB }
+
+	/**
+	 * Draws a scene into a new TYPE_INT_RGB image.
+	 */
+	public static BufferedImage frame(Scene scene, int width, int height, long seed) {
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		Random random = new Random(seed);
+		int target = TARGET.getRGB() & 0xffffff;
+		int[] rgb = new int[width * height];
+		switch (scene) {
+			case UNIFORM:
+				Arrays.fill(rgb, 0x808080);
+				break;
+			case NOISY:
+				// about a tenth of the pixels land on the target color, scattered as specks
+				for (int i = 0; i < rgb.length; i++) {
+					rgb[i] = random.nextInt(10) == 0 ? target : random.nextInt(0x1000000);
+				}
+				break;
+			case SMALL_BLOBS:
+				Arrays.fill(rgb, 0x202020);
+				for (int b = width * height / 2000; b > 0; b--) {
+					fillDisc(rgb, width, height, random.nextInt(width), random.nextInt(height), 2 + random.nextInt(8), target);
+				}
+				break;
+			case HUGE_BLOB:
+				Arrays.fill(rgb, 0x202020);
+				fillDisc(rgb, width, height, width / 2, height / 2, Math.min(width, height) * 9 / 20, target);
+				break;
+		}
+		image.setRGB(0, 0, width, height, rgb, 0, width);
+		return image;
+	}
+
+	/**
+	 * Sets every pixel within radius of (cx,cy) to color.
+	 */
+	static void fillDisc(int[] rgb, int width, int height, int cx, int cy, int radius, int color) {
+		for (int y = Math.max(0, cy - radius); y <= Math.min(height - 1, cy + radius); y++) {
+			for (int x = Math.max(0, cx - radius); x <= Math.min(width - 1, cx + radius); x++) {
+				if ((x - cx) * (x - cx) + (y - cy) * (y - cy) <= radius * radius) rgb[y * width + x] = color;
+			}
+		}
+	}
+}
@@ -0,0 +1,64 @@
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+
+/**
+ * Frames generated in memory: a disc of SyntheticFrames.TARGET's color circling over a fixed small-blob scene.
+ * Needs no camera or files, and produces the same frames for the same seed.
+ */
+public class SyntheticSource implements FrameSource<int[]> {
+	private final int width, height;
+	private final int frames;						// how many frames to produce, or -1 for no end
+	private final long seed;
+	private int[] background;						// the scene the disc moves over
+	private int next;								// number of the next frame
+
+	public SyntheticSource(int width, int height, int frames, long seed) {
+		this.width = width;
+		this.height = height;
+		this.frames = frames;
+		this.seed = seed;
+	}
+
+	public void start() {
+		background = new int[width * height];
+		SyntheticFrames.frame(SyntheticFrames.Scene.SMALL_BLOBS, width, height, seed)
+				.getRGB(0, 0, width, height, background, 0, width);
+		next = 0;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * Draws the next frame as packed RGB ints.
+	 */
+	public int[] grab(int[] reuse) {
+		if (frames >= 0 && next >= frames) return null;
+		if (reuse == null) reuse = new int[width * height];
+		System.arraycopy(background, 0, reuse, 0, background.length);
+		double angle = next * 0.05;
+		int radius = Math.min(width, height) / 10;
+		SyntheticFrames.fillDisc(reuse, width, height,
+				(int) (width / 2 + Math.cos(angle) * width / 4), (int) (height / 2 + Math.sin(angle) * height / 4),
+				radius, SyntheticFrames.TARGET.getRGB() & 0xffffff);
+		next++;
+		return reuse;
+	}
+
+	public BufferedImage toImage(int[] frame, BufferedImage reuse) {
+		if (reuse == null || reuse.getType() != BufferedImage.TYPE_INT_RGB
+				|| reuse.getWidth() != width || reuse.getHeight() != height) {
+			reuse = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		}
+		System.arraycopy(frame, 0, ((DataBufferInt) reuse.getRaster().getDataBuffer()).getData(), 0, width * height);
+		return reuse;
+	}
+
+	public void stop() {
+	}
+}
@@ -0,0 +1,329 @@
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Tracks colors in several streams at once in one process, e.g. a camera each, sharing one pool of worker threads.
+ * Each stream is a session with its own source, target colors, RegionFinder, stats and region events; only grabbing
+ * has a thread per stream (it mostly waits on the source). Everything else, converting, finding and recoloring, is
+ * done on the pool, one frame at a time per stream: a stream with a frame waiting queues itself on the pool, and
+ * once that frame is done goes to the back of the queue again if another has come. So every stream gets its turn,
+ * and a stream that can't keep up drops frames (live) or holds back its own grabbing (recorded), never the others.
+ * Usage: java TrackingServer [--workers n] [--fps rate] [--stats seconds] source=targetColors...
+ * where each source is as for HeadlessTracker (a directory of images, a video file, or synthetic[:frames[:seed]]) and
+ * targetColors are hex RRGGBB, separated by commas. With --fps, each source is grabbed at that rate, as a camera
+ * would be, and frames the pool can't get to are dropped; without, every frame is processed, as fast as possible.
+ */
+public class TrackingServer {
+	private final ExecutorService pool;
+	private final int workers;
+	private final List<Session<?>> sessions = new ArrayList<Session<?>>();
+
+	/**
+	 * A server processing frames on the given number of worker threads.
+	 */
+	public TrackingServer(int workers) {
+		this.workers = workers;
+		pool = Executors.newFixedThreadPool(workers);
+	}
+
+	public int getWorkers() {
+		return workers;
+	}
+
+	/**
+	 * Adds a stream tracking the targets in frames from the source (already started), and starts grabbing from it.
+	 * frameRate paces grabbing, dropping frames the pool can't get to; 0 processes every frame as fast as possible.
+	 */
+	public synchronized <F> Session<F> add(String name, FrameSource<F> source, List<ColorTarget> targets, double frameRate) {
+		Session<F> session = new Session<F>(name, source, targets, frameRate);
+		sessions.add(session);
+		session.start();
+		return session;
+	}
+
+	public synchronized List<Session<?>> getSessions() {
+		return new ArrayList<Session<?>>(sessions);
+	}
+
+	/**
+	 * Waits until every stream's source has run out and its last frame has been processed.
+	 */
+	public void awaitFinished() throws InterruptedException {
+		for (Session<?> session : getSessions()) session.awaitFinished();
+	}
+
+	/**
+	 * Stops grabbing from every stream, lets the frames being processed finish, and shuts the pool down.
+	 */
+	public void stop() throws InterruptedException {
+		for (Session<?> session : getSessions()) session.stop();
+		pool.shutdown();
+		pool.awaitTermination(1, TimeUnit.MINUTES);
+	}
+
+	/**
+	 * One stream: its source, grabbed on its own thread, and its tracking, done on the pool.
+	 */
+	public class Session<F> implements Runnable {
+		private final String name;
+		private final FrameSource<F> source;
+		private volatile List<ColorTarget> targets;
+		private volatile char displayMode = 'w';			// 'r' or 'p' to recolor each frame, as CamPaint does
+		private final long framePeriod;						// nanoseconds between grabs, 0 for as fast as frames come
+		private final RegionFinder finder = new RegionFinder();
+		private final PipelineStats stats = new PipelineStats();
+		private final RegionEventStream events = new RegionEventStream();	// the first target's regions, for any listeners
+		private final FrameSlot<F> grabbed = new FrameSlot<F>();	// the latest frame grabbed and not yet processed
+		private final ConcurrentLinkedQueue<F> spareFrames = new ConcurrentLinkedQueue<F>();	// handed back to grabbing
+		private final AtomicBoolean scheduled = new AtomicBoolean();	// whether the session is queued on or running in the pool
+		private BufferedImage image;						// reused for each frame (only touched by one worker at a time)
+		private volatile boolean sourceDone;				// grabbing has stopped
+		private volatile boolean finished;					// and the last frame has been processed
+		private Thread grabber;
+
+		Session(String name, FrameSource<F> source, List<ColorTarget> targets, double frameRate) {
+			this.name = name;
+			this.source = source;
+			this.targets = targets;
+			framePeriod = frameRate > 0 ? (long) (1e9 / frameRate) : 0;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * Changes the colors to track, from the next frame on.
+		 */
+		public void setTargets(List<ColorTarget> targets) {
+			this.targets = targets;
+		}
+
+		public List<ColorTarget> getTargets() {
+			return targets;
+		}
+
+		public void setDisplayMode(char displayMode) {
+			this.displayMode = displayMode;
+		}
+
+		/**
+		 * This stream's timings; frames dropped are those grabbed and replaced before the pool got to them.
+		 */
+		public PipelineStats getStats() {
+			return stats;
+		}
+
+		public RegionEventStream getRegionEvents() {
+			return events;
+		}
+
+		/**
+		 * The finder with the last frame's regions and recolored image; only look while the stream is finished
+		 * or from a region event listener, as the pool reuses it for the next frame.
+		 */
+		public RegionFinder getFinder() {
+			return finder;
+		}
+
+		void start() {
+			grabber = new Thread(new Runnable() {
+				public void run() {
+					grabLoop();
+				}
+			}, "grab " + name);
+			grabber.setDaemon(true);
+			grabber.start();
+		}
+
+		void stop() throws InterruptedException {
+			grabber.interrupt();
+			grabber.join();
+		}
+
+		synchronized void awaitFinished() throws InterruptedException {
+			while (!finished) wait();
+		}
+
+		private void grabLoop() {
+			try {
+				long next = System.nanoTime();
+				while (!Thread.currentThread().isInterrupted()) {
+					if (framePeriod > 0) {
+						// hold to the frame rate, without trying to catch up on time already lost
+						long wait = next - System.nanoTime();
+						if (wait > 0) LockSupport.parkNanos(this, wait);
+						next = Math.max(next, System.nanoTime() - framePeriod) + framePeriod;
+					}
+					long start = System.nanoTime();
+					F frame = source.grab(spareFrames.poll());
+					if (frame == null) break;			// out of frames
+					stats.record(PipelineStats.Stage.GRAB, start);
+					if (framePeriod > 0) {
+						F dropped = grabbed.offer(frame);
+						if (dropped != null) {
+							spareFrames.offer(dropped);
+							stats.dropped();
+						}
+					}
+					else {
+						grabbed.put(frame);
+					}
+					schedule();
+				}
+			}
+			catch (InterruptedException e) {
+				// stopped
+			}
+			catch (Exception e) {
+				System.err.println("Exception grabbing from " + name + "!");
+				e.printStackTrace();
+			}
+			sourceDone = true;
+			schedule();			// to finish up, if nothing's queued
+		}
+
+		/**
+		 * Queues the session on the pool, unless it's already queued or running.
+		 */
+		private void schedule() {
+			if (scheduled.compareAndSet(false, true)) {
+				try {
+					pool.execute(this);
+				}
+				catch (RejectedExecutionException e) {
+					scheduled.set(false);		// the server is stopping
+					done();
+				}
+			}
+		}
+
+		/**
+		 * On the pool: processes the latest frame, then goes to the back of the queue if there's another.
+		 */
+		public void run() {
+			F frame = grabbed.poll();
+			if (frame != null) {
+				try {
+					process(frame);
+				}
+				catch (Exception e) {
+					System.err.println("Exception processing " + name + "!");
+					e.printStackTrace();
+				}
+				spareFrames.offer(frame);
+			}
+			scheduled.set(false);
+			if (!grabbed.isEmpty()) schedule();
+			else if (sourceDone) done();
+		}
+
+		private void process(F frame) throws Exception {
+			long start = System.nanoTime();
+			image = source.toImage(frame, image);
+			start = stats.record(PipelineStats.Stage.CONVERT, start);
+			finder.setImage(image);
+			List<ColorTarget> targets = this.targets;
+			RegionSet first;
+			if (targets.size() == 1) {
+				finder.findRegions(targets.get(0).getColor());
+				first = finder.getRegions();
+			}
+			else {
+				first = finder.findRegions(targets).get(0);
+			}
+			start = stats.record(PipelineStats.Stage.FIND_REGIONS, start);
+			if (events.hasListeners()) events.publish(first);
+			char displayMode = this.displayMode;
+			if (displayMode == 'r' || displayMode == 'p') {
+				if (targets.size() == 1) finder.recolorImage(targets.get(0).getPaintColor().getRGB(), displayMode);
+				else finder.recolorImage(targets, displayMode);
+				stats.record(PipelineStats.Stage.RECOLOR, start);
+			}
+			stats.frameDone();
+		}
+
+		private synchronized void done() {
+			if (grabbed.isEmpty() && !scheduled.get()) {
+				finished = true;
+				notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * The per-stream summary lines, for a log.
+	 */
+	public List<String> summary() {
+		List<String> lines = new ArrayList<String>();
+		for (Session<?> session : getSessions()) {
+			for (String line : session.getStats().summary()) lines.add(session.getName() + ": " + line);
+		}
+		return lines;
+	}
+
+	public static void main(String[] args) throws Exception {
+		int workers = Runtime.getRuntime().availableProcessors();
+		double frameRate = 0, statsPeriod = 5;
+		while (args.length >= 2 && args[0].startsWith("--")) {
+			if (args[0].equals("--workers")) workers = Integer.parseInt(args[1]);
+			else if (args[0].equals("--fps")) frameRate = Double.parseDouble(args[1]);
+			else if (args[0].equals("--stats")) statsPeriod = Double.parseDouble(args[1]);
+			else break;
+			args = Arrays.copyOfRange(args, 2, args.length);
+		}
+		if (args.length < 1 || args[0].startsWith("--")) {
+			System.err.println("usage: java TrackingServer [--workers n] [--fps rate] [--stats seconds] source=targetColors...");
+			System.err.println("  source: a directory of images, a video file, or synthetic[:frames[:seed]]; "
+					+ "targetColors: hex RRGGBB[,RRGGBB...]");
+			System.exit(1);
+		}
+		final TrackingServer server = new TrackingServer(workers);
+		long start = System.nanoTime();
+		for (String stream : args) {
+			int split = stream.lastIndexOf('=');
+			if (split < 0) {
+				System.err.println("Expected source=targetColors, not `" + stream + "'");
+				System.exit(1);
+			}
+			FrameSource<?> source = HeadlessTracker.source(stream.substring(0, split));
+			source.start();
+			String name = "stream" + server.getSessions().size();
+			Session<?> session = server.add(name, source, HeadlessTracker.targets(stream.substring(split + 1)), frameRate);
+			session.getStats().register("TrackingServer " + name);
+		}
+		Timer statsLog = new Timer("stats log", true);
+		if (statsPeriod > 0) {
+			long period = (long) (statsPeriod * 1000);
+			statsLog.scheduleAtFixedRate(new TimerTask() {
+				public void run() {
+					for (String line : server.summary()) System.err.println(line);
+				}
+			}, period, period);
+		}
+		server.awaitFinished();
+		statsLog.cancel();
+		double seconds = (System.nanoTime() - start) / 1e9;
+		long frames = 0;
+		for (Session<?> session : server.getSessions()) {
+			frames += session.getStats().getFrames();
+			session.source.stop();
+			session.getStats().unregister();
+		}
+		server.stop();
+		System.err.printf("%d streams, %d workers: %d frames in %.2f s, %.1f frames/s%n", server.getSessions().size(),
+				workers, frames, seconds, frames / seconds);
+		for (String line : server.summary()) System.err.println(line);
+	}
+}
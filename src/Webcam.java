@@ -1,13 +1,6 @@
-import org.bytedeco.javacv.Frame;
-import org.bytedeco.javacv.*;
-import org.bytedeco.opencv.opencv_core.IplImage;
-
-import javax.swing.*;
 import java.awt.*;
 import java.awt.image.BufferedImage;
-
-import static org.bytedeco.opencv.global.opencv_core.cvFlip;
-import static org.bytedeco.opencv.global.opencv_imgproc.cvResize;
+import java.util.List;
 
 /**
  * Class to handle webcam capture and processing, packaging up JavaCV stuff.
@@ -26,11 +19,13 @@ public class Webcam extends DrawingGUI {
     protected boolean mac = true;					// automatically set to true for mac, false otherwise
     private static final double scale = 0.5;		// to downsize the image (for speed), set this to a fraction <= 1
     private static final boolean mirror = true;		// make true in order to mirror left<->right so your left hand is on the left side of the image
+    private static final double frameRate = 30;		// most frames per second to grab (0 for as many as the camera gives)
 
-    protected BufferedImage image;					// image grabbed from webcam (if any)
+    protected volatile BufferedImage image;			// image grabbed from webcam (if any)
 
-    private Grabby grabby;							// handles webcam grabbing
-    private FrameGrabber grabber;					// JavaCV
+    private FramePipeline<?> pipeline;				// handles grabbing and processing, a stage per thread
+    private FrameSource<?> source;					// where the frames come from, normally the webcam
+    private final FrameExchange display = new FrameExchange();	// finished frames, from the processing thread to draw()
 
     public Webcam() {
         super("Webcam");
@@ -48,30 +43,73 @@ public class Webcam extends DrawingGUI {
         //mac = true; //set manually if code above doesn't work
 
         try {
-            if (mac) grabber = new OpenCVFrameGrabber(0); // this seems to work for Mac people
-            else grabber = FrameGrabber.createDefault(0);  // this seems to work for Windows people
-            grabber.start();
-            System.out.println("Started!");
+            open(GrabberSource.camera(mac, scale, mirror));
         } catch (Exception e) {
             System.err.println("Failed to start frame grabber");
             System.err.println(e);
             System.exit(-1);
         }
+    }
 
-        // Get size and figure out scaling
-        int width = grabber.getImageWidth();
-        int height = grabber.getImageHeight();
-        System.out.println("Native camera size "+width+"*"+height);
-        if (scale != 1) {
-            width = (int)(width*scale);
-            height = (int)(height*scale);
-            System.out.println("Scaled to "+width+"*"+height);
-        }
-        initWindow(width,height);
+    /**
+     * Shows and processes frames from some other source, e.g. a recorded video.
+     */
+    public Webcam(FrameSource<?> source) throws Exception {
+        super("Webcam");
+        open(source);
+    }
+
+    /**
+     * Starts the source, sizes the window to it, and spawns separate threads to handle grabbing and processing.
+     */
+    private void open(FrameSource<?> source) throws Exception {
+        source.start();
+        System.out.println("Started!");
+        this.source = source;
+        initWindow(source.getWidth(), source.getHeight());
+        pipeline = pipeline(source);
+        if (source instanceof GrabberSource) ((GrabberSource) source).setStats(pipeline.getStats());
+        pipeline.getStats().register(getClass().getSimpleName());
+        pipeline.start();
+    }
+
+    private <F> FramePipeline<F> pipeline(FrameSource<F> source) {
+        return new FramePipeline<F>(source, new Grabby(), frameRate);
+    }
+
+    /**
+     * Sets the most frames per second to grab; 0 for as many as the camera gives.
+     */
+    public void setFrameRate(double frameRate) {
+        pipeline.setFrameRate(frameRate);
+    }
+
+    public double getFrameRate() {
+        return pipeline.getFrameRate();
+    }
 
-        // Spawn a separate thread to handle grabbing.
-        grabby = new Grabby();
-        grabby.execute();
+    /**
+     * How long grabbing, converting, processing and painting are taking; subclasses add their own stages.
+     */
+    public PipelineStats getStats() {
+        return pipeline.getStats();
+    }
+
+    /**
+     * DrawingGUI method, here the stats, when the overlay is on.
+     */
+    @Override
+    public List<String> overlayText() {
+        return pipeline != null ? pipeline.getStats().summary() : null;
+    }
+
+    /**
+     * Stops grabbing and releases the camera.
+     */
+    public void stopGrabbing() throws Exception {
+        pipeline.stop();
+        pipeline.getStats().unregister();
+        source.stop();
     }
 
     /**
@@ -82,58 +120,48 @@ public class Webcam extends DrawingGUI {
     }
 
     /**
-     * DrawingGUI method, here showing the current image.
+     * Draws what to show for the frame just processed.
+     * Called on the processing thread, into an offscreen image that draw() then shows,
+     * so subclasses override this rather than draw().
+     */
+    public void drawFrame(Graphics g) {
+        g.drawImage(image, 0, 0, null);
+    }
+
+    /**
+     * DrawingGUI method, here showing the latest finished frame.
      */
     @Override
     public void draw(Graphics g) {
-        g.drawImage(image, 0, 0, null);
+        BufferedImage shown = display.front();
+        if (shown != null) g.drawImage(shown, 0, 0, null);
     }
 
     /**
-     * Handles grabbing an image from the webcam (following JavaCV examples)
+     * Handles each image grabbed from the webcam (grabbing and converting happen in the source),
      * storing it in image, and telling the canvas to repaint itself.
+     * Grabbing, converting and processing each run on their own pipeline thread, so they overlap.
      */
-    private class Grabby extends SwingWorker<Void, Void> {
-        protected Void doInBackground() throws Exception {
-            OpenCVFrameConverter.ToIplImage grabberConverter = new OpenCVFrameConverter.ToIplImage();
-            Java2DFrameConverter paintConverter = new Java2DFrameConverter();
-            while (!isCancelled()) {
-                IplImage grabbed = null;
-                while (grabbed == null) {
-                    try {
-                        grabbed = grabberConverter.convert(grabber.grab());
-                    }
-                    catch (Exception e) {
-                        Thread.sleep(100); // wait a bit
-                    }
-                }
-                if (mirror) {
-                    cvFlip(grabbed, grabbed, 1);
-                }
-                if (scale != 1) {
-                    IplImage resized = IplImage.create(width, height, grabbed.depth(), grabbed.nChannels());
-                    cvResize(grabbed, resized);
-                    grabbed = resized;
-                }
-                Frame frame = grabberConverter.convert(grabbed);
-                image = paintConverter.getBufferedImage(frame);
-                try {
-                    processImage();  //*** we will override this
-                }
-                catch (Exception e) {
-                    // Bail out if problems processing image
-                    System.err.println("Exception in processImage!");
-                    e.printStackTrace();
-                    System.exit(-1);
-                }
-                canvas.repaint(); //*** this causes draw() to fire
-                Thread.sleep(100); // slow it down
+    private class Grabby implements FramePipeline.Processor {
+        public void process(BufferedImage grabbed) {
+            image = grabbed;
+            try {
+                processImage();  //*** we will override this
+            }
+            catch (Exception e) {
+                // Bail out if problems processing image
+                System.err.println("Exception in processImage!");
+                e.printStackTrace();
+                System.exit(-1);
             }
-            // All done; clean up
-            grabber.stop();
-            grabber.release();
-            grabber = null;
-            return null;
+        }
+
+        public void render() {
+            Graphics g = display.back(width, height).getGraphics();
+            drawFrame(g);
+            g.dispose();
+            display.publish();
+            canvas.repaint(); //*** this causes draw() to fire
         }
     }
-}
\ No newline at end of file
+}